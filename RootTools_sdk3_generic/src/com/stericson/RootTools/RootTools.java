@@ -23,8 +23,14 @@
 package com.stericson.RootTools;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
 
@@ -33,12 +39,25 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
+import com.stericson.RootTools.containers.DirEntry;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.containers.FindFilter;
 import com.stericson.RootTools.containers.Mount;
+import com.stericson.RootTools.containers.MountTable;
 import com.stericson.RootTools.containers.Permissions;
+import com.stericson.RootTools.containers.ProcessTable;
+import com.stericson.RootTools.containers.Space;
 import com.stericson.RootTools.containers.Symlink;
+import com.stericson.RootTools.containers.SyncOptions;
+import com.stericson.RootTools.containers.SyncResult;
 import com.stericson.RootTools.exceptions.RootDeniedException;
 import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.FileOpBatch;
+import com.stericson.RootTools.execution.FileWatcher;
+import com.stericson.RootTools.execution.RemountScope;
 import com.stericson.RootTools.execution.Shell;
+import com.stericson.RootTools.execution.SpaceWatcher;
+import com.stericson.RootTools.execution.StreamCallback;
 import com.stericson.RootTools.internal.Remounter;
 import com.stericson.RootTools.internal.RootToolsInternalMethods;
 import com.stericson.RootTools.internal.Runner;
@@ -78,8 +97,8 @@ public final class RootTools {
     // --------------------
 
     public static boolean debugMode = false;
-    public static List<String> lastFoundBinaryPaths = new ArrayList<String>();
-    public static String utilPath;
+    public static volatile List<String> lastFoundBinaryPaths = new ArrayList<String>();
+    public static volatile String utilPath;
 
     /**
      * Setting this to false will disable the handler that is used
@@ -188,6 +207,19 @@ public final class RootTools {
         return getInternals().exists(file);
     }
 
+    /**
+     * Use this to check whether or not many files exist on the filesystem. This is a lot cheaper
+     * than calling exists() for every file, as all files that this app cannot see for itself are
+     * checked in a single round trip to the root shell.
+     *
+     * @param files the files to check, including the full path to each file and its name.
+     * @return a map from every file to whether or not it exists, in the order the files were given.
+     *         Files that could not be checked, because the root shell failed, are left out.
+     */
+    public static Map<String, Boolean> existsAll(Collection<String> files) {
+        return getInternals().existsAll(files);
+    }
+
     /**
      * This will try and fix a given binary. (This is for Busybox applets or Toolbox applets) By
      * "fix", I mean it will try and symlink the binary from either toolbox or Busybox and fix the
@@ -227,6 +259,22 @@ public final class RootTools {
         return getInternals().findBinary(binaryName);
     }
 
+    /**
+     * Looks for many binaries at once. Every directory in $PATH, and the usual places where
+     * binaries are kept, is searched for all of them in a single round trip. Unlike findBinary(),
+     * this does not touch lastFoundBinaryPaths.
+     * <p/>
+     * Where binaries are found, or not, is remembered for as long as the directory they were
+     * searched in is not modified, so asking again is cheap.
+     *
+     * @param binaryNames the binaries to find.
+     * @return for every binary, the directories it was found in, in the order the shell would
+     *         search them. The list is empty if the binary was not found.
+     */
+    public static Map<String, List<String>> findBinaries(Set<String> binaryNames) {
+        return getInternals().findBinaries(binaryNames);
+    }
+
     /**
      * @param path String that represents the path to the Busybox binary you want to retrieve the version of.
      * @return BusyBox version is found, "" if not found.
@@ -300,9 +348,168 @@ public final class RootTools {
         return getInternals().getFilePermissionsSymlinks(file);
     }
 
+    /**
+     * Use this to get the mode, owner, size, modification time, inode, SELinux context and symlink
+     * target of many files at once. Files that this app cannot see are no problem, the files are
+     * stat'ed as root with a single stat invocation per few thousand files. Symlinks are not
+     * followed.
+     *
+     * @param files the files to stat, including the full path to each file and its name.
+     * @return a map from every file that exists to its FileStat, in the order the files were given.
+     *         The map is empty if no stat could be found on the device.
+     */
+    public static Map<String, FileStat> stat(Collection<String> files) {
+        return getInternals().stat(files);
+    }
+
+    /**
+     * Use this to hash many files at once, whether this app can read them or not. Files you can read
+     * are hashed in-process, several at a time and without copying them through buffers. The others
+     * are hashed as root by md5sum, sha1sum or sha256sum, thousands of files per invocation, spread
+     * over the pooled root shells.
+     *
+     * @param paths     the files to hash, including the full path to each file and its name.
+     * @param algorithm "MD5", "SHA-1" or "SHA-256".
+     * @return a map from every file that could be hashed to its digest, in the order the files were given.
+     * @throws NoSuchAlgorithmException if the algorithm is not one of the above.
+     * @throws InterruptedException     if the calling thread is interrupted while waiting.
+     */
+    public static Map<String, byte[]> checksum(Collection<String> paths, String algorithm)
+            throws NoSuchAlgorithmException, InterruptedException {
+        return getInternals().checksum(paths, algorithm);
+    }
+
+    /**
+     * This will list the entries of a directory, without descending into subdirectories, and hand
+     * them to the callback one at a time as they are found. Nothing is collected in memory, so this
+     * works just as well for directories with thousands of entries.
+     *
+     * @param path     the directory to list.
+     * @param callback receives every entry, return false from it to stop listing.
+     * @return the number of entries handed to the callback.
+     * @throws Exception if find or stat is not available, or the root shell could not be opened.
+     */
+    public static int list(String path, StreamCallback<DirEntry> callback) throws Exception {
+        return getInternals().list(path, 1, null, 0, callback);
+    }
+
+    /**
+     * This will list the entries of a directory and hand them to the callback one at a time as they
+     * are found. Nothing is collected in memory. The listing runs on a pooled root shell and is
+     * killed as soon as the limit is reached or the callback returns false.
+     *
+     * @param path        the directory to list.
+     * @param maxDepth    how deep to descend, 1 lists only the directory itself, 0 or less has no limit.
+     * @param namePattern only list entries whose name matches this shell pattern, like "*.apk",
+     *                    null to list all.
+     * @param limit       stop after this many entries, 0 or less has no limit.
+     * @param callback    receives every entry, return false from it to stop listing.
+     * @return the number of entries handed to the callback.
+     * @throws Exception if find or stat is not available, or the root shell could not be opened.
+     */
+    public static int list(String path, int maxDepth, String namePattern, int limit,
+                           StreamCallback<DirEntry> callback) throws Exception {
+        return getInternals().list(path, maxDepth, namePattern, limit, callback);
+    }
+
+    /**
+     * This will search below a directory and hand the matches to the callback one at a time as they
+     * are found. The name, type, size, age and depth conditions of the filter are all handed to find,
+     * so nothing that does not match is sent back, and find is killed as soon as the limit is
+     * reached or the callback returns false.
+     *
+     * @param root     the directory to search.
+     * @param filter   what to look for.
+     * @param limit    stop after this many matches, 0 or less has no limit.
+     * @param callback receives every match, return false from it to stop searching.
+     * @return the number of matches handed to the callback.
+     * @throws Exception if find or stat is not available, or the root shell could not be opened.
+     */
+    public static int find(String root, FindFilter filter, int limit, StreamCallback<DirEntry> callback)
+            throws Exception {
+        return getInternals().find(root, filter, limit, callback);
+    }
+
+    /**
+     * This will search below a directory and stop at the first match, use it to check whether
+     * something exists somewhere below a directory without walking all of it.
+     *
+     * @param root   the directory to search.
+     * @param filter what to look for.
+     * @return the first match, or <code>null</code> if nothing matches.
+     * @throws Exception if find or stat is not available, or the root shell could not be opened.
+     */
+    public static DirEntry findFirst(String root, FindFilter filter) throws Exception {
+        final DirEntry[] first = {null};
+
+        getInternals().find(root, filter, 1, new StreamCallback<DirEntry>() {
+            public boolean onResult(DirEntry entry) {
+                first[0] = entry;
+                return false;
+            }
+        });
+
+        return first[0];
+    }
+
+    /**
+     * This will open a file that only root can read, without copying it anywhere. A root shell
+     * writes the file into a FIFO in the cache directory of the given context while you read from
+     * the stream, so binary files come through untouched. If mkfifo is not available the file is
+     * copied to the cache directory instead, and deleted again once it is open.
+     * <p/>
+     * A read error on the root side is reported as an IOException at the end of the stream.
+     * Always close the stream, this also stops the root side if you did not read everything.
+     *
+     * @param context any context, its cache directory is used for the FIFO.
+     * @param path    the file to read.
+     * @return a FileInputStream over the contents of the file.
+     * @throws IOException if the file cannot be read.
+     */
+    public static InputStream openRead(Context context, String path) throws IOException {
+        return getInternals().openRead(context, path);
+    }
+
+    /**
+     * This will copy a file that only root can read into the cache directory of the given context
+     * and map it into memory. The copy is deleted before this returns, the mapping stays valid
+     * until it is garbage collected.
+     *
+     * @param context any context, its cache directory is used for the copy.
+     * @param path    the file to map.
+     * @return a read only mapping of the whole file.
+     * @throws IOException if the file cannot be read or mapped.
+     */
+    public static MappedByteBuffer openMapped(Context context, String path) throws IOException {
+        return getInternals().openMapped(context, path);
+    }
+
+    /**
+     * This will open a file that only root can write, without writing it to a temporary file of
+     * your own first. A root shell reads what you write from a FIFO in the cache directory of the
+     * given context, with dd and a large block size when available, into a file next to the
+     * destination. Once you close the stream that file gets its mode and owner and is moved over the
+     * destination, so the destination is never seen half written or with the wrong attributes.
+     * <p/>
+     * The stream is a FileOutputStream, so getChannel().transferFrom() or a FileChannel's
+     * transferTo() into it work as well. Always close the stream, a failed write is reported by close().
+     *
+     * @param context     any context, its cache directory is used for the FIFO.
+     * @param path        the file to write.
+     * @param mode        the mode to give the file, like "644", null to leave it as created.
+     * @param owner       the owner to give the file, like "root.root", null to leave it as created.
+     * @param remountAsRw remounts the destination as read/write until the stream is closed.
+     * @return a FileOutputStream into the file.
+     * @throws IOException if the file cannot be opened.
+     */
+    public static OutputStream openWrite(Context context, String path, String mode, String owner,
+                                         boolean remountAsRw) throws IOException {
+        return getInternals().openWrite(context, path, mode, owner, remountAsRw);
+    }
+
     /**
      * This method will return the inode number of a file. This method is dependent on having a version of
-     * ls that supports the -i parameter.
+     * stat on the device, either on its own or from busybox or toybox.
      *
      * @param file path to the file that you wish to return the inode number
      * @return String The inode number for this file or "" if the inode number could not be found.
@@ -324,6 +531,17 @@ public final class RootTools {
         return getInternals().getMounts();
     }
 
+    /**
+     * This will return a snapshot of the mount table. Unlike getMounts(), the same snapshot
+     * is returned until the mounts actually change, or until RootTools remounts something.
+     *
+     * @return <code>MountTable</code> the current mount table.
+     * @throws Exception if we cannot return the mount points.
+     */
+    public static MountTable getMountTable() throws Exception {
+        return getInternals().getMountTable();
+    }
+
     /**
      * This will tell you how the specified mount is mounted. rw, ro, etc...
      * <p/>
@@ -336,6 +554,17 @@ public final class RootTools {
         return getInternals().getMountedAs(path);
     }
 
+    /**
+     * This will return the exported environment of the root shell. It is read in a single round
+     * trip the first time it is needed and kept for as long as the root shell stays open.
+     *
+     * @return <code>Map<String, String></code> every exported variable and its value.
+     * @throws Exception if the root shell cannot be opened.
+     */
+    public static Map<String, String> getEnvironment() throws Exception {
+        return getInternals().getEnvironment();
+    }
+
     /**
      * This will return the environment variable $PATH
      *
@@ -395,14 +624,57 @@ public final class RootTools {
      * Get the space for a desired partition.
      *
      * @param path The partition to find the space for.
-     * @return the amount if space found within the desired partition. If the space was not found
-     *         then the value is -1
+     * @return the free space, in kilobytes, found within the desired partition. If the space was not
+     *         found then the value is -1
      * @throws TimeoutException
      */
     public static long getSpace(String path) {
         return getInternals().getSpace(path);
     }
 
+    /**
+     * Get the total, used and free space of many partitions at once. Partitions this app may statfs
+     * are measured without a shell, all others are measured as root with a single df.
+     *
+     * @param paths paths on the partitions to measure, like "/system" or "/data/app".
+     * @return the space of every partition that could be measured, in bytes, in the order the paths
+     *         were given.
+     */
+    public static Map<String, Space> getSpace(Collection<String> paths) {
+        return getInternals().getSpace(paths);
+    }
+
+    /**
+     * This will give you a watcher that measures partitions every interval milliseconds, and tells
+     * the listener whenever free space drops below or climbs back above the thresholds you set for
+     * them. Add partitions with watch(), then start() it, and close() it when you are done.
+     *
+     * @param interval how often to measure, in milliseconds.
+     * @param listener is told about every threshold crossed.
+     * @return <code>SpaceWatcher</code> a watcher that has not been started yet.
+     */
+    public static SpaceWatcher newSpaceWatcher(long interval, SpaceWatcher.Listener listener) {
+        return new SpaceWatcher(interval, listener);
+    }
+
+    /**
+     * This will watch files and directories as root and tell the listener when they change, so you
+     * do not have to poll them. A single inotifyd watches all paths on a root shell of its own, events
+     * are handed to the listener in batches of everything that happened within 100 milliseconds.
+     * Close the watcher once you no longer need it, it keeps its root shell open until then.
+     *
+     * @param paths    the files and directories to watch.
+     * @param events   the FileEvent letters to watch for, like "nd" for created and deleted files,
+     *                 null for everything.
+     * @param listener receives the events, on the watcher's own thread.
+     * @return <code>FileWatcher</code> the running watcher.
+     * @throws Exception if inotifyd is not available or the root shell could not be opened.
+     */
+    public static FileWatcher watch(Collection<String> paths, String events, FileWatcher.Listener listener)
+            throws Exception {
+        return getInternals().watch(paths, events, 100, listener);
+    }
+
     /**
      * This will return a String that represent the symlink for a specified file.
      * <p/>
@@ -429,10 +701,26 @@ public final class RootTools {
         return getInternals().getSymlinks(path);
     }
 
+    /**
+     * This will find all symlinks below the given path and hand them to the callback one at a time
+     * as they are found. Subdirectories are scanned in parallel on pooled root shells, but the
+     * callback is only ever called by one thread at a time.
+     *
+     * @param path     path to search for Symlinks.
+     * @param callback receives every symlink, return false from it to stop scanning.
+     * @return the number of symlinks handed to the callback.
+     * @throws Exception if find is not available, the root shell could not be opened or part of
+     *                   the tree could not be scanned.
+     */
+    public static int scanSymlinks(String path, StreamCallback<Symlink> callback) throws Exception {
+        return getInternals().scanSymlinks(path, callback);
+    }
+
     /**
      * This will return to you a string to be used in your shell commands which will represent the
      * valid working toolbox with correct permissions. For instance, if Busybox is available it will
-     * return "busybox", if busybox is not available but toolbox is then it will return "toolbox"
+     * return "busybox", if busybox is not available but toolbox is then it will return "toolbox",
+     * failing that "toybox".
      *
      * @return String that indicates the available toolbox to use for accessing applets.
      */
@@ -629,6 +917,8 @@ public final class RootTools {
      * "/system/bin/some/directory/that/really/would/never/exist" will result in /system ultimately
      * being remounted. However, keep in mind that the longer the path you supply, the more work
      * this has to do, and the slower it will run.
+     * <p/>
+     * Remounting as RO is refused while a scope from openRemountScope() is open on the partition.
      *
      * @param file      file path
      * @param mountType mount type: pass in RO (Read only) or RW (Read Write)
@@ -642,6 +932,67 @@ public final class RootTools {
         return (remounter.remount(file, mountType));
     }
 
+    /**
+     * This will give you a new, empty batch of file operations. Add copies, moves, chmods, chowns,
+     * deletes and mkdirs to it and execute it to run them all as root in a handful of shell invocations,
+     * with every partition that is written to remounted as read/write only once.
+     *
+     * @return <code>FileOpBatch</code> an empty batch.
+     */
+    public static FileOpBatch newFileOpBatch() {
+        return getInternals().newFileOpBatch();
+    }
+
+    /**
+     * This will mirror a directory this app can read into a directory that only root can write,
+     * for instance a bundle of files from your app's storage into /system/etc. Only new and changed
+     * files are copied: the destination is stat'ed in one go, files whose size and age match are
+     * skipped and files that might have changed are compared by checksum first. All copies,
+     * deletes and permission changes then run as one batch, under a single remount.
+     * <p/>
+     * Symbolic links in the source are not followed nor copied, they are reported by
+     * <code>SyncResult.getSkipped()</code> and left alone in the destination.
+     *
+     * @param source      the directory to mirror, it must be readable by this app.
+     * @param destination the directory to mirror into, it is created if it does not exist.
+     * @param options     whether to delete extra files, which mode and owner to apply and so on,
+     *                    null for the defaults.
+     * @return <code>SyncResult</code> what was copied, deleted and could not be done.
+     * @throws Exception if the source is not a directory or the destination cannot be listed.
+     */
+    public static SyncResult sync(String source, String destination, SyncOptions options) throws Exception {
+        return getInternals().sync(source, destination, options);
+    }
+
+    /**
+     * This will remount the partition that the given path lives on as read/write, and keep it that
+     * way until the returned scope is closed. Scopes on the same partition are shared between all
+     * threads: only the first one remounts and the partition is only put back the way it was when
+     * the last one is closed. copyFile() and deleteFileOrDirectory() join an open scope instead of
+     * remounting on their own, so wrapping a loop of them in a scope saves a lot of remounts.
+     * <p/>
+     * Always close the scope, preferably in a finally block.
+     *
+     * @param path a path on the partition to remount, the file does not need to exist.
+     * @return <code>RemountScope</code> the scope, close it once you are done writing.
+     * @throws Exception if the mount table cannot be read, the path is not on any mount or the
+     *                   partition could not be remounted as rw.
+     */
+    public static RemountScope openRemountScope(String path) throws Exception {
+        return getInternals().openRemountScope(path);
+    }
+
+    /**
+     * This will give you a snapshot of all running processes, indexed by pid, name and uid. The
+     * snapshot is read from /proc without a shell where Android allows it, and as root otherwise.
+     * Call refresh() on it to bring it up to date again, only what changed is read again.
+     *
+     * @return <code>ProcessTable</code> an up to date snapshot of the running processes.
+     */
+    public static ProcessTable getProcessTable() {
+        return ProcessTable.getInstance().refresh();
+    }
+
     /**
      * This restarts only Android OS without rebooting the whole device. This does NOT work on all
      * devices. This is done by killing the main init process named zygote. Zygote is restarted
@@ -0,0 +1,99 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+/**
+ * Something that happened to a watched file or directory, as reported by inotifyd.
+ */
+public class FileEvent {
+
+    /*
+     * The event letters inotifyd uses, pass a combination of them to RootTools.watch().
+     */
+    public static final char ACCESSED = 'a';
+    public static final char MODIFIED = 'c';
+    public static final char ATTRIBUTES_CHANGED = 'e';
+    public static final char CLOSED_AFTER_WRITE = 'w';
+    public static final char CLOSED = '0';
+    public static final char OPENED = 'r';
+    public static final char MOVED_FROM = 'm';
+    public static final char MOVED_TO = 'y';
+    public static final char CREATED = 'n';
+    public static final char DELETED = 'd';
+    public static final char DELETED_SELF = 'D';
+    public static final char MOVED_SELF = 'M';
+    public static final char UNMOUNTED = 'u';
+    public static final char OVERFLOW = 'o';
+    public static final char IGNORED = 'x';
+
+    private final String events;
+    private final String path;
+    private final String name;
+
+    public FileEvent(String events, String path, String name) {
+        this.events = events;
+        this.path = path;
+        this.name = name;
+    }
+
+    /**
+     * @return the letters of everything that happened at once, usually just one.
+     */
+    public String getEvents() {
+        return events;
+    }
+
+    public boolean is(char event) {
+        return events.indexOf(event) != -1;
+    }
+
+    /**
+     * @return the watched path.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the name of the entry in the watched directory this happened to, or <code>null</code>
+     *         if it happened to the watched path itself.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the full path of the file or directory this happened to.
+     */
+    public String getFile() {
+        if (name == null) {
+            return path;
+        }
+        return path.endsWith("/") ? path + name : path + "/" + name;
+    }
+
+    @Override
+    public String toString() {
+        return events + " " + getFile();
+    }
+}
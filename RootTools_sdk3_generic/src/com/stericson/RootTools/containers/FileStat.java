@@ -0,0 +1,135 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+/**
+ * What stat knows about a file. For symlinks this describes the link itself, not its target.
+ */
+public class FileStat {
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFLNK = 0120000;
+
+    private final String path;
+    private final int mode;
+    private final int uid;
+    private final int gid;
+    private final long size;
+    private final long lastModified;
+    private final long inode;
+    private final String context;
+    private final String symlinkTarget;
+
+    public FileStat(String path, int mode, int uid, int gid, long size, long lastModified,
+                    long inode, String context, String symlinkTarget) {
+        this.path = path;
+        this.mode = mode;
+        this.uid = uid;
+        this.gid = gid;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.inode = inode;
+        this.context = context;
+        this.symlinkTarget = symlinkTarget;
+    }
+
+    protected FileStat(FileStat other) {
+        this(other.path, other.mode, other.uid, other.gid, other.size, other.lastModified,
+                other.inode, other.context, other.symlinkTarget);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the raw st_mode, file type bits included.
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * @return the permission bits, including setuid, setgid and sticky. Print with
+     *         Integer.toOctalString() to get the familiar 755 notation.
+     */
+    public int getPermissions() {
+        return mode & 07777;
+    }
+
+    public int getUid() {
+        return uid;
+    }
+
+    public int getGid() {
+        return gid;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the modification time in milliseconds since the epoch, like File.lastModified().
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getInode() {
+        return inode;
+    }
+
+    /**
+     * @return the SELinux context, or null when the device or stat does not report one.
+     */
+    public String getContext() {
+        return context;
+    }
+
+    /**
+     * @return where the symlink points to, or null if this is not a symlink.
+     */
+    public String getSymlinkTarget() {
+        return symlinkTarget;
+    }
+
+    public boolean isDirectory() {
+        return (mode & S_IFMT) == S_IFDIR;
+    }
+
+    public boolean isFile() {
+        return (mode & S_IFMT) == S_IFREG;
+    }
+
+    public boolean isSymlink() {
+        return (mode & S_IFMT) == S_IFLNK;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %o %d %d %d %d %d %s%s", path, mode, uid, gid, size, lastModified, inode,
+                context, symlinkTarget != null ? " -> " + symlinkTarget : "");
+    }
+}
@@ -0,0 +1,131 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+/**
+ * What RootTools.find() looks for. Every condition is handed to find itself, so entries that do
+ * not match never leave the root shell. Conditions that are not set match everything.
+ * <p/>
+ * <pre>
+ * RootTools.find("/data/app", new FindFilter().setName("*.apk").setType(FindFilter.FILE)
+ *         .setMinSize(10 * 1024 * 1024), 5, callback);
+ * </pre>
+ */
+public final class FindFilter {
+
+    public static final char FILE = 'f';
+    public static final char DIRECTORY = 'd';
+    public static final char SYMLINK = 'l';
+
+    private String name = null;
+    private char type = 0;
+    private long minSize = -1;
+    private long maxSize = -1;
+    private int modifiedWithin = -1;
+    private int modifiedBefore = -1;
+    private int maxDepth = 0;
+
+    /**
+     * @param name a shell pattern the name must match, like "*.so".
+     */
+    public FindFilter setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * @param type FILE, DIRECTORY or SYMLINK.
+     */
+    public FindFilter setType(char type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * @param minSize the smallest size to match, in bytes.
+     */
+    public FindFilter setMinSize(long minSize) {
+        this.minSize = minSize;
+        return this;
+    }
+
+    /**
+     * @param maxSize the largest size to match, in bytes.
+     */
+    public FindFilter setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        return this;
+    }
+
+    /**
+     * @param minutes only match entries modified less than this many minutes ago.
+     */
+    public FindFilter setModifiedWithin(int minutes) {
+        this.modifiedWithin = minutes;
+        return this;
+    }
+
+    /**
+     * @param minutes only match entries modified more than this many minutes ago.
+     */
+    public FindFilter setModifiedBefore(int minutes) {
+        this.modifiedBefore = minutes;
+        return this;
+    }
+
+    /**
+     * @param maxDepth how deep to descend, 1 searches only the directory itself, 0 has no limit.
+     */
+    public FindFilter setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public char getType() {
+        return type;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public int getModifiedWithin() {
+        return modifiedWithin;
+    }
+
+    public int getModifiedBefore() {
+        return modifiedBefore;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+}
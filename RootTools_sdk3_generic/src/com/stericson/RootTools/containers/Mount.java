@@ -23,7 +23,8 @@
 package com.stericson.RootTools.containers;
 
 import java.io.File;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
@@ -31,13 +32,22 @@ public class Mount {
     final File mDevice;
     final File mMountPoint;
     final String mType;
-    final Set<String> mFlags;
+    final int[] mFlagIds;
+    final BitSet mFlagBits;
+    Set<String> mFlags;
 
     public Mount(File device, File path, String type, String flagsStr) {
         mDevice = device;
         mMountPoint = path;
         mType = type;
-        mFlags = new LinkedHashSet<String>(Arrays.asList(flagsStr.split(",")));
+
+        String[] flags = flagsStr.split(",");
+        mFlagIds = new int[flags.length];
+        mFlagBits = new BitSet();
+        for (int i = 0; i < flags.length; i++) {
+            mFlagIds[i] = MountFlags.intern(flags[i]);
+            mFlagBits.set(mFlagIds[i]);
+        }
     }
 
     public File getDevice() {
@@ -52,12 +62,39 @@ public class Mount {
         return mType;
     }
 
-    public Set<String> getFlags() {
+    public synchronized Set<String> getFlags() {
+        if (mFlags == null) {
+            Set<String> flags = new LinkedHashSet<String>();
+            for (int id : mFlagIds) {
+                flags.add(MountFlags.name(id));
+            }
+            mFlags = Collections.unmodifiableSet(flags);
+        }
         return mFlags;
     }
 
+    /**
+     * @param flag the mount option to check, for instance "ro" or "nosuid".
+     * @return true if the mount has the option.
+     */
+    public boolean hasFlag(String flag) {
+        int id = MountFlags.lookup(flag);
+        return id != -1 && mFlagBits.get(id);
+    }
+
+    public boolean isReadOnly() {
+        return mFlagBits.get(MountFlags.RO);
+    }
+
+    /**
+     * @return the first mount option, which is how the mount is mounted, "ro" or "rw".
+     */
+    public String getMode() {
+        return mFlagIds.length > 0 ? MountFlags.name(mFlagIds[0]) : "";
+    }
+
     @Override
     public String toString() {
-        return String.format("%s on %s type %s %s", mDevice, mMountPoint, mType, mFlags);
+        return String.format("%s on %s type %s %s", mDevice, mMountPoint, mType, getFlags());
     }
 }
@@ -0,0 +1,68 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out a small integer id for every mount option we come across, so that mounts can keep
+ * their options in a bitset and check them without allocating anything.
+ */
+final class MountFlags {
+
+    private static final Map<String, Integer> ids = new HashMap<String, Integer>();
+    private static final List<String> names = new ArrayList<String>();
+
+    static final int RO = intern("ro");
+    static final int RW = intern("rw");
+
+    private MountFlags() {}
+
+    /**
+     * @return the id of the option, a new one if we have not seen it before.
+     */
+    static synchronized int intern(String flag) {
+        Integer id = ids.get(flag);
+        if (id == null) {
+            id = names.size();
+            ids.put(flag, id);
+            names.add(flag);
+        }
+        return id;
+    }
+
+    /**
+     * @return the id of the option, or -1 if no mount uses it.
+     */
+    static synchronized int lookup(String flag) {
+        Integer id = ids.get(flag);
+        return id == null ? -1 : id;
+    }
+
+    static synchronized String name(int id) {
+        return names.get(id);
+    }
+}
@@ -0,0 +1,124 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of the mount table.
+ * <p/>
+ * RootTools hands out the same snapshot until the mounts actually change,
+ * so it is cheap to ask for it again and again.
+ * <p/>
+ * The mount points are indexed in a tree of path components, finding the mount a path
+ * lives on only takes as many steps as the path has components.
+ */
+public final class MountTable {
+    final List<Mount> mMounts;
+    final Node mRoot = new Node();
+
+    public MountTable(List<Mount> mounts) {
+        mMounts = Collections.unmodifiableList(new ArrayList<Mount>(mounts));
+
+        for (Mount mount : mMounts) {
+            Node node = mRoot;
+            String path = mount.getMountPoint().getAbsolutePath();
+
+            int start = 0;
+            while ((start = nextComponent(path, start)) < path.length()) {
+                int end = endOfComponent(path, start);
+                String component = path.substring(start, end);
+
+                Node child = node.children.get(component);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(component, child);
+                }
+                node = child;
+                start = end;
+            }
+
+            //a later mount on the same point hides the earlier one.
+            node.mount = mount;
+        }
+    }
+
+    /**
+     * @return every mount, in the order the kernel lists them.
+     */
+    public List<Mount> getMounts() {
+        return mMounts;
+    }
+
+    /**
+     * @param path an absolute path, the file does not need to exist.
+     * @return the mount the path lives on, which is the one with the longest mount point
+     *         that contains the path, or <code>null</code> if there is none.
+     */
+    public Mount findMount(String path) {
+        Node node = mRoot;
+        Mount found = node.mount;
+
+        int start = 0;
+        while ((start = nextComponent(path, start)) < path.length()) {
+            int end = endOfComponent(path, start);
+
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.mount != null) {
+                found = node.mount;
+            }
+            start = end;
+        }
+
+        return found;
+    }
+
+    private static int nextComponent(String path, int start) {
+        while (start < path.length() && path.charAt(start) == '/') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int endOfComponent(String path, int start) {
+        int end = path.indexOf('/', start);
+        return end == -1 ? path.length() : end;
+    }
+
+    @Override
+    public String toString() {
+        return mMounts.toString();
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<String, Node>(4);
+        Mount mount;
+    }
+}
@@ -0,0 +1,104 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+/**
+ * A process, as found in /proc.
+ */
+public class ProcessInfo {
+    private final int pid;
+    private final int ppid;
+    private final int uid;
+    private final char state;
+    private final String comm;
+    private final String cmdline;
+    private final long startTime;
+
+    public ProcessInfo(int pid, int ppid, int uid, char state, String comm, String cmdline, long startTime) {
+        this.pid = pid;
+        this.ppid = ppid;
+        this.uid = uid;
+        this.state = state;
+        this.comm = comm;
+        this.cmdline = cmdline;
+        this.startTime = startTime;
+    }
+
+    public int getPid() {
+        return pid;
+    }
+
+    public int getParentPid() {
+        return ppid;
+    }
+
+    /**
+     * @return the real uid, or -1 if it could not be determined.
+     */
+    public int getUid() {
+        return uid;
+    }
+
+    /**
+     * @return the state as the kernel reports it, like R for running or S for sleeping.
+     */
+    public char getState() {
+        return state;
+    }
+
+    /**
+     * @return the name of the executable, which the kernel cuts off at 15 characters.
+     */
+    public String getComm() {
+        return comm;
+    }
+
+    /**
+     * @return the command line with its arguments separated by spaces, empty for kernel threads.
+     */
+    public String getCmdline() {
+        return cmdline;
+    }
+
+    /**
+     * @return the name ps shows: the first argument of the command line, or comm if there is none.
+     *         For apps this is the package or process name.
+     */
+    public String getName() {
+        int space = cmdline.indexOf(' ');
+        String name = space >= 0 ? cmdline.substring(0, space) : cmdline;
+        return name.length() > 0 ? name : comm;
+    }
+
+    /**
+     * @return when the process started, in clock ticks after boot.
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    @Override
+    public String toString() {
+        return pid + " " + ppid + " " + uid + " " + state + " " + getName();
+    }
+}
@@ -0,0 +1,360 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * A snapshot of the running processes, indexed by pid, name and uid.
+ * <p/>
+ * The snapshot is read straight from /proc, without any shell. A refresh only reads the command
+ * line of processes that are new or changed their uid or name since the last one, which is what
+ * zygote children do right after they are forked. When /proc hides other users' processes from
+ * this app, the whole table is read as root in a single pass that only uses shell builtins.
+ */
+public final class ProcessTable {
+
+    public interface Filter {
+
+        /**
+         * @return true if the process should be included.
+         */
+        boolean accept(ProcessInfo process);
+    }
+
+    private static final String STAT_TAG = "rt_ps ";
+    private static final String CMDLINE_TAG = "rt_cmd ";
+
+    private static final ProcessTable instance = new ProcessTable();
+
+    private Map<Integer, ProcessInfo> byPid = new HashMap<Integer, ProcessInfo>();
+    private Map<String, List<ProcessInfo>> byName = new HashMap<String, List<ProcessInfo>>();
+    private Map<Integer, List<ProcessInfo>> byUid = new HashMap<Integer, List<ProcessInfo>>();
+
+    private ProcessTable() {}
+
+    /**
+     * @return the shared table, refresh it before use.
+     */
+    public static ProcessTable getInstance() {
+        return instance;
+    }
+
+    /**
+     * Brings the snapshot up to date.
+     *
+     * @return this table.
+     */
+    public synchronized ProcessTable refresh() {
+        Map<Integer, ProcessInfo> processes = null;
+
+        //with hidepid, init is the first process we can no longer see.
+        if (!new File("/proc/1/stat").canRead()) {
+            processes = readThroughShell();
+        }
+
+        if (processes == null) {
+            processes = readProc();
+        }
+
+        Map<String, List<ProcessInfo>> names = new HashMap<String, List<ProcessInfo>>();
+        Map<Integer, List<ProcessInfo>> uids = new HashMap<Integer, List<ProcessInfo>>();
+
+        for (ProcessInfo process : processes.values()) {
+            add(names, process.getName(), process);
+            if (!process.getName().equals(process.getComm())) {
+                add(names, process.getComm(), process);
+            }
+            add(uids, process.getUid(), process);
+        }
+
+        byPid = processes;
+        byName = names;
+        byUid = uids;
+
+        return this;
+    }
+
+    /**
+     * @return the process with the given pid, or null if there is none.
+     */
+    public synchronized ProcessInfo getProcess(int pid) {
+        return byPid.get(pid);
+    }
+
+    /**
+     * @param name the name as ps shows it, like "com.android.phone", or the name of the executable.
+     * @return all processes with that name.
+     */
+    public synchronized List<ProcessInfo> getProcesses(String name) {
+        List<ProcessInfo> processes = byName.get(name);
+        return processes != null ? new ArrayList<ProcessInfo>(processes) : new ArrayList<ProcessInfo>();
+    }
+
+    /**
+     * @return all processes running as the given uid.
+     */
+    public synchronized List<ProcessInfo> getProcessesForUid(int uid) {
+        List<ProcessInfo> processes = byUid.get(uid);
+        return processes != null ? new ArrayList<ProcessInfo>(processes) : new ArrayList<ProcessInfo>();
+    }
+
+    /**
+     * @return all processes.
+     */
+    public synchronized List<ProcessInfo> getProcesses() {
+        return new ArrayList<ProcessInfo>(byPid.values());
+    }
+
+    /**
+     * @return all processes the filter accepts.
+     */
+    public synchronized List<ProcessInfo> find(Filter filter) {
+        List<ProcessInfo> result = new ArrayList<ProcessInfo>();
+        for (ProcessInfo process : byPid.values()) {
+            if (filter.accept(process)) {
+                result.add(process);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sends a signal, as root, to every process in the snapshot that the filter accepts, with a
+     * single kill.
+     *
+     * @param filter picks the processes to signal.
+     * @param signal the signal number, like 9 for SIGKILL or 15 for SIGTERM.
+     * @return the number of processes signalled, or -1 if kill could not be run.
+     */
+    public int signalAll(Filter filter, int signal) {
+        List<ProcessInfo> processes = find(filter);
+
+        if (processes.isEmpty()) {
+            return 0;
+        }
+
+        StringBuilder sb = new StringBuilder("kill -").append(signal);
+        for (ProcessInfo process : processes) {
+            sb.append(' ').append(process.getPid());
+        }
+
+        try {
+            CommandCapture command = new CommandCapture(0, false, sb.toString());
+            Shell.startRootShell().add(command);
+            commandWait(command);
+
+            if (command.getExitCode() != 0) {
+                //some of them were probably gone already.
+                RootTools.log("kill exited with " + command.getExitCode());
+            }
+
+            return processes.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
+            return -1;
+        }
+    }
+
+    private Map<Integer, ProcessInfo> readProc() {
+        Map<Integer, ProcessInfo> processes = new HashMap<Integer, ProcessInfo>();
+        String[] entries = new File("/proc").list();
+
+        if (entries == null) {
+            return processes;
+        }
+
+        for (String entry : entries) {
+            if (entry.length() == 0 || !Character.isDigit(entry.charAt(0))) {
+                continue;
+            }
+
+            String dir = "/proc/" + entry + "/";
+
+            //it may exit while we read it, it then simply is not part of the snapshot.
+            try {
+                String stat = read(dir + "stat");
+                int uid = parseUid(read(dir + "status"));
+                ProcessInfo process = parseStat(stat, uid, null);
+
+                if (process == null) {
+                    continue;
+                }
+
+                ProcessInfo known = byPid.get(process.getPid());
+                String cmdline;
+
+                if (known != null && known.getStartTime() == process.getStartTime()
+                        && known.getUid() == uid && known.getComm().equals(process.getComm())) {
+                    cmdline = known.getCmdline();
+                } else {
+                    cmdline = read(dir + "cmdline");
+                }
+
+                processes.put(process.getPid(), parseStat(stat, uid, cmdline));
+            } catch (IOException ignore) {
+            }
+        }
+
+        return processes;
+    }
+
+    private Map<Integer, ProcessInfo> readThroughShell() {
+        final Map<Integer, ProcessInfo> processes = new HashMap<Integer, ProcessInfo>();
+
+        //builtins only, the first NUL ends the command line so we get what ps shows as the name.
+        CommandCapture command = new CommandCapture(0, false,
+                "for rt_p in /proc/[0-9]*; do rt_u=-1;"
+                        + " while read rt_k rt_v rt_r; do case $rt_k in Uid:) rt_u=$rt_v; break;; esac; done < $rt_p/status;"
+                        + " read rt_s < $rt_p/stat && { echo \"" + STAT_TAG + "$rt_u $rt_s\";"
+                        + " rt_c=; IFS= read -r rt_c < $rt_p/cmdline; echo \"" + CMDLINE_TAG + "$rt_c\"; };"
+                        + " done 2>/dev/null") {
+
+            private String stat = null;
+            private int uid = -1;
+
+            @Override
+            public void output(int id, String line) {
+                if (line.startsWith(STAT_TAG)) {
+                    int space = line.indexOf(' ', STAT_TAG.length());
+                    try {
+                        uid = Integer.parseInt(line.substring(STAT_TAG.length(), space));
+                        stat = line.substring(space + 1);
+                    } catch (Exception e) {
+                        stat = null;
+                    }
+                } else if (line.startsWith(CMDLINE_TAG) && stat != null) {
+                    ProcessInfo process = parseStat(stat, uid, line.substring(CMDLINE_TAG.length()));
+                    if (process != null) {
+                        processes.put(process.getPid(), process);
+                    }
+                    stat = null;
+                }
+            }
+        };
+
+        try {
+            Shell.startRootShell().add(command);
+            commandWait(command);
+        } catch (InterruptedException e) {
+            //a table read halfway is worse than what we can see ourselves.
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
+            return null;
+        }
+
+        return processes.isEmpty() ? null : processes;
+    }
+
+    /**
+     * Parses /proc/[pid]/stat, which looks like: 123 (name) S 1 ... with the start time in field 22.
+     */
+    private static ProcessInfo parseStat(String stat, int uid, String cmdline) {
+        int open = stat.indexOf('(');
+        int close = stat.lastIndexOf(')');
+
+        if (open < 0 || close < open) {
+            return null;
+        }
+
+        try {
+            int pid = Integer.parseInt(stat.substring(0, open).trim());
+            String comm = stat.substring(open + 1, close);
+            String[] fields = stat.substring(close + 1).trim().split("\\s+");
+
+            if (fields.length < 20) {
+                return null;
+            }
+
+            return new ProcessInfo(pid, Integer.parseInt(fields[1]), uid, fields[0].charAt(0), comm,
+                    cmdline != null ? cmdline.trim() : "", Long.parseLong(fields[19]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int parseUid(String status) {
+        int start = status.indexOf("\nUid:");
+        if (start < 0) {
+            return -1;
+        }
+
+        String[] fields = status.substring(start + 5).trim().split("\\s+");
+        try {
+            return Integer.parseInt(fields[0]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads a file from /proc, with NULs turned into spaces.
+     */
+    private static String read(String path) throws IOException {
+        FileInputStream in = new FileInputStream(path);
+        try {
+            byte[] buffer = new byte[4096];
+            StringBuilder sb = new StringBuilder();
+            int read;
+
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    sb.append(buffer[i] == 0 ? ' ' : (char) (buffer[i] & 0xff));
+                }
+            }
+
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static <K> void add(Map<K, List<ProcessInfo>> index, K key, ProcessInfo process) {
+        List<ProcessInfo> processes = index.get(key);
+        if (processes == null) {
+            processes = new ArrayList<ProcessInfo>(1);
+            index.put(key, processes);
+        }
+        processes.add(process);
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
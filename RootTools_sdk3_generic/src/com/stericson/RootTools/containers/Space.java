@@ -0,0 +1,76 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+/**
+ * The size of a partition and how much of it is in use, in bytes.
+ */
+public class Space {
+    private final String path;
+    private final long total;
+    private final long used;
+    private final long free;
+    private final long time;
+
+    public Space(String path, long total, long used, long free, long time) {
+        this.path = path;
+        this.total = total;
+        this.used = used;
+        this.free = free;
+        this.time = time;
+    }
+
+    /**
+     * @return the path this was asked for, which can be any path on the partition.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getUsed() {
+        return used;
+    }
+
+    /**
+     * @return the bytes available to apps, space reserved for root is not included.
+     */
+    public long getFree() {
+        return free;
+    }
+
+    /**
+     * @return when this was measured, in SystemClock.elapsedRealtime() milliseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return path + " " + total + " total, " + used + " used, " + free + " free";
+    }
+}
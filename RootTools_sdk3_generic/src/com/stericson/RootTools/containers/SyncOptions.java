@@ -0,0 +1,119 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+/**
+ * What RootTools.sync() does besides copying changed files, the defaults copy and create only.
+ * <p/>
+ * <pre>
+ * SyncResult result = RootTools.sync("/data/data/com.example/files/bundle", "/system/etc/bundle",
+ *         new SyncOptions().setMode("644").setOwner("root.root").setDeleteExtras(true));
+ * </pre>
+ */
+public final class SyncOptions {
+
+    private boolean deleteExtras = false;
+    private boolean alwaysChecksum = false;
+    private boolean remountAsRw = true;
+    private String mode = null;
+    private String directoryMode = null;
+    private String owner = null;
+
+    /**
+     * @param deleteExtras when true, files and directories in the destination that are not in the
+     *                     source are deleted.
+     */
+    public SyncOptions setDeleteExtras(boolean deleteExtras) {
+        this.deleteExtras = deleteExtras;
+        return this;
+    }
+
+    /**
+     * @param alwaysChecksum when true, files of the same size are always compared by checksum,
+     *                       even when the copy is newer than the source.
+     */
+    public SyncOptions setAlwaysChecksum(boolean alwaysChecksum) {
+        this.alwaysChecksum = alwaysChecksum;
+        return this;
+    }
+
+    /**
+     * @param remountAsRw when true, which is the default, the destination is remounted as rw
+     *                    while the changes are made.
+     */
+    public SyncOptions setRemountAsRw(boolean remountAsRw) {
+        this.remountAsRw = remountAsRw;
+        return this;
+    }
+
+    /**
+     * @param mode the mode to give every file in the destination, like "644", null to leave it alone.
+     *             Files that already have this mode are not touched.
+     */
+    public SyncOptions setMode(String mode) {
+        this.mode = mode;
+        return this;
+    }
+
+    /**
+     * @param directoryMode the mode to give every directory in the destination, like "755",
+     *                      null to leave it alone.
+     */
+    public SyncOptions setDirectoryMode(String directoryMode) {
+        this.directoryMode = directoryMode;
+        return this;
+    }
+
+    /**
+     * @param owner the owner to give the files and directories that are copied or created,
+     *              like "root.root", null to leave it as created.
+     */
+    public SyncOptions setOwner(String owner) {
+        this.owner = owner;
+        return this;
+    }
+
+    public boolean isDeleteExtras() {
+        return deleteExtras;
+    }
+
+    public boolean isAlwaysChecksum() {
+        return alwaysChecksum;
+    }
+
+    public boolean isRemountAsRw() {
+        return remountAsRw;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public String getDirectoryMode() {
+        return directoryMode;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+}
@@ -0,0 +1,88 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.containers;
+
+import java.util.List;
+
+/**
+ * What RootTools.sync() did, all paths are relative to the source and destination directories.
+ */
+public final class SyncResult {
+
+    private final List<String> copied;
+    private final List<String> deleted;
+    private final List<String> failed;
+    private final List<String> skipped;
+    private final int unchanged;
+
+    public SyncResult(List<String> copied, List<String> deleted, List<String> failed,
+                      List<String> skipped, int unchanged) {
+        this.copied = copied;
+        this.deleted = deleted;
+        this.failed = failed;
+        this.skipped = skipped;
+        this.unchanged = unchanged;
+    }
+
+    /**
+     * @return the files that were copied because they were new or had changed.
+     */
+    public List<String> getCopied() {
+        return copied;
+    }
+
+    /**
+     * @return the files and directories that were deleted from the destination.
+     */
+    public List<String> getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return the files and directories that could not be copied, created, changed or deleted.
+     */
+    public List<String> getFailed() {
+        return failed;
+    }
+
+    /**
+     * @return the symbolic links in the source, which are not followed nor copied.
+     */
+    public List<String> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return the number of files that were already up to date.
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * @return true if everything that had to change did.
+     */
+    public boolean isSuccessful() {
+        return failed.isEmpty();
+    }
+}
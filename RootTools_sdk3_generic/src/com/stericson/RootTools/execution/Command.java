@@ -29,6 +29,8 @@ import android.os.Looper;
 import android.os.Message;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import com.stericson.RootTools.Constants;
 import com.stericson.RootTools.RootTools;
@@ -42,9 +44,16 @@ public abstract class Command {
     String[] command = {};
     boolean javaCommand = false;
     Context context = null;
-    boolean finished = false;
+    volatile boolean finished = false;
+    private final CountDownLatch finishedLatch = new CountDownLatch(1);
     boolean terminated = false;
     boolean handlerEnabled = true;
+    boolean captureStderr = false;
+    boolean stoppable = false;
+    volatile boolean stopped = false;
+    int pid = -1;
+    Shell shell = null;
+    int errorCount = 0;
     int exitCode = -1;
     int id = 0;
     int timeout = RootTools.default_Command_Timeout;
@@ -53,6 +62,15 @@ public abstract class Command {
     public abstract void commandTerminated(int id, String reason);
     public abstract void commandCompleted(int id, int exitCode);
 
+    /**
+     * Called for every line the command writes to stderr, but only when stderr capture
+     * has been enabled with {@link #setCaptureStderr(boolean)}. Otherwise stderr is
+     * merged into the regular output.
+     */
+    public void commandError(int id, String line) {
+        //pass
+    }
+
     /**
      * Constructor for executing a normal shell command
      * @param id the id of the command being executed
@@ -130,6 +148,7 @@ public abstract class Command {
     protected void finishCommand() {
         executing = false;
         finished = true;
+        finishedLatch.countDown();
         this.notifyAll();
     }
 
@@ -190,6 +209,11 @@ public abstract class Command {
                 sb.append('\n');
             }
         }
+
+        if (stoppable) {
+            //run as a background job and tell the shell its pid, so that it can be killed.
+            sb.insert(0, "{\n").append("} & echo \"").append(Shell.pidToken).append("$!\"; wait $!\n");
+        }
         return sb.toString();
     }
 
@@ -201,10 +225,117 @@ public abstract class Command {
         return handlerEnabled;
     }
 
+    /**
+     * When enabled, stderr of this command is tagged inside the shell and delivered to
+     * {@link #commandError(int, String)} instead of {@link #commandOutput(int, String)}, so
+     * output parsers only ever see stdout. No extra reader thread is involved, both streams
+     * still travel over the same pipe.
+     * <p/>
+     * Note that the command is run in a subshell while capturing, so things like <code>cd</code>
+     * or variable assignments will not persist in the shell.
+     *
+     * @param captureStderr true to separate stderr from stdout for this command.
+     */
+    public void setCaptureStderr(boolean captureStderr) {
+        this.captureStderr = captureStderr;
+    }
+
+    public boolean isCaptureStderr() {
+        return captureStderr;
+    }
+
+    /**
+     * When enabled, the command runs as a background job of the shell, so that {@link #stop()}
+     * can kill it and free the shell right away. This has to be set before the command is added
+     * to a shell.
+     * <p/>
+     * Note that the command runs in a subshell, with its input taken from /dev/null, so things
+     * like <code>cd</code> or variable assignments will not persist in the shell.
+     *
+     * @param stoppable true to allow stopping this command.
+     */
+    public void setStoppable(boolean stoppable) {
+        this.stoppable = stoppable;
+    }
+
+    public boolean isStoppable() {
+        return stoppable;
+    }
+
+    /**
+     * Stops the command, call this from commandOutput() once you have what you need. Output that
+     * arrives after this is dropped, and the command's job, with everything it started, is killed
+     * as soon as its pid is known. The command then finishes as usual, with the exit code of the
+     * killed job.
+     * <p/>
+     * Commands that are not stoppable only drop the rest of their output, they still run to the end.
+     */
+    public void stop() {
+        int target;
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            target = pid;
+        }
+
+        if (!stoppable) {
+            RootTools.log("Command " + id + " is not stoppable, dropping the rest of its output");
+        } else if (target > 0) {
+            JobKiller.kill(shell, target);
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Called by the shell when the job of a stoppable command has started.
+     */
+    void setPid(int pid) {
+        synchronized (this) {
+            this.pid = pid;
+            if (!stopped) {
+                return;
+            }
+        }
+
+        JobKiller.kill(shell, pid);
+    }
+
+    /**
+     * @return the number of stderr lines received so far, only counted while capturing stderr.
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
     public boolean isFinished() {
         return finished;
     }
 
+    /**
+     * Blocks until the command has finished or was terminated.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void waitForFinish() throws InterruptedException {
+        finishedLatch.await();
+    }
+
+    /**
+     * Blocks until the command has finished or was terminated, or the given time has passed.
+     *
+     * @param timeout the most milliseconds to wait.
+     * @return true if the command has finished.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public boolean waitForFinish(long timeout) throws InterruptedException {
+        return finishedLatch.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
     public int getExitCode() {
         return this.exitCode;
     }
@@ -267,6 +398,22 @@ public abstract class Command {
         }
     }
 
+    protected void error(int id, String line) {
+        errorCount++;
+
+        if (mHandler != null && handlerEnabled) {
+            Message msg = mHandler.obtainMessage();
+            Bundle bundle = new Bundle();
+            bundle.putInt(CommandHandler.ACTION, CommandHandler.COMMAND_ERROR);
+            bundle.putString(CommandHandler.TEXT, line);
+            msg.setData(bundle);
+            mHandler.sendMessage(msg);
+        }
+        else {
+            commandError(id, line);
+        }
+    }
+
     private class ExecutionMonitor extends Thread {
         public void run() {
             while (!finished) {
@@ -292,6 +439,7 @@ public abstract class Command {
         static final public int COMMAND_OUTPUT = 0x01;
         static final public int COMMAND_COMPLETED = 0x02;
         static final public int COMMAND_TERMINATED = 0x03;
+        static final public int COMMAND_ERROR = 0x04;
 
         public void handleMessage(Message msg) {
             int action = msg.getData().getInt(ACTION);
@@ -307,6 +455,9 @@ public abstract class Command {
                 case COMMAND_TERMINATED:
                     commandTerminated(id, text);
                     break;
+                case COMMAND_ERROR:
+                    commandError(id, text);
+                    break;
             }
         }
     }
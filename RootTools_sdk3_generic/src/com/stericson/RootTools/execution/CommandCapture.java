@@ -26,6 +26,7 @@ import com.stericson.RootTools.RootTools;
 
 public class CommandCapture extends Command {
     private StringBuilder sb = new StringBuilder();
+    private StringBuilder sbError = new StringBuilder();
 
     public CommandCapture(int id, String... command) {
         super(id, command);
@@ -46,6 +47,12 @@ public class CommandCapture extends Command {
         RootTools.log("Command", "ID: " + id + ", " + line);
     }
 
+    @Override
+    public void commandError(int id, String line) {
+        sbError.append(line).append('\n');
+        RootTools.log("Command", "ID: " + id + ", stderr: " + line);
+    }
+
     @Override
     public void commandTerminated(int id, String reason) {
         //pass
@@ -56,6 +63,13 @@ public class CommandCapture extends Command {
         //pass
     }
 
+    /**
+     * @return everything the command wrote to stderr, only filled while capturing stderr.
+     */
+    public String getErrorOutput() {
+        return sbError.toString();
+    }
+
     @Override
     public String toString() {
         return sb.toString();
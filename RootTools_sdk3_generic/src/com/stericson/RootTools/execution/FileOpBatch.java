@@ -0,0 +1,103 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+/**
+ * Collects file operations and runs them as root in as few shell invocations as possible.
+ * <p/>
+ * Operations run in the order they were added. Consecutive operations of the same kind, such as
+ * a run of deletes or a run of chmods to the same mode, share a single invocation, and every
+ * operation still gets a status of its own. Every mount point that is written to is remounted
+ * as rw once for the whole batch, see {@link RemountScope}.
+ * <p/>
+ * <pre>
+ * int[] status = RootTools.newFileOpBatch()
+ *         .copy("/sdcard/libfoo.so", "/system/lib/libfoo.so")
+ *         .chmod("644", "/system/lib/libfoo.so")
+ *         .delete("/system/lib/libbar.so")
+ *         .execute();
+ * </pre>
+ */
+public abstract class FileOpBatch {
+
+    /**
+     * Copies source to destination, overwriting the destination if it exists.
+     */
+    public abstract FileOpBatch copy(String source, String destination);
+
+    /**
+     * Moves source to destination, overwriting the destination if it exists.
+     */
+    public abstract FileOpBatch move(String source, String destination);
+
+    /**
+     * Changes the mode of a file.
+     *
+     * @param mode the mode as understood by chmod, for example "644".
+     * @param path the file to change.
+     */
+    public abstract FileOpBatch chmod(String mode, String path);
+
+    /**
+     * Changes the owner of a file.
+     *
+     * @param owner the owner as understood by chown, for example "root.root" or "1000".
+     * @param path  the file to change.
+     */
+    public abstract FileOpBatch chown(String owner, String path);
+
+    /**
+     * Deletes a file, or a directory with everything in it.
+     */
+    public abstract FileOpBatch delete(String path);
+
+    /**
+     * Creates a directory, and any missing parent directories.
+     */
+    public abstract FileOpBatch mkdir(String path);
+
+    /**
+     * @param remountAsRw when true, which is the default, the mount points that are written to are
+     *                    remounted as rw while the batch runs.
+     */
+    public abstract FileOpBatch setRemountAsRw(boolean remountAsRw);
+
+    /**
+     * @param preserveFileAttributes when true, copies keep the mode, owner and timestamps of the source.
+     */
+    public abstract FileOpBatch setPreserveFileAttributes(boolean preserveFileAttributes);
+
+    /**
+     * @return the number of operations in this batch.
+     */
+    public abstract int size();
+
+    /**
+     * Runs all operations. If the calling thread is interrupted, the operations that are still
+     * running are stopped and the rest is skipped, the interrupt status is kept.
+     *
+     * @return the exit code of every operation, in the order they were added. An exit code
+     *         of zero means success, -1 means that the operation could not be run at all.
+     */
+    public abstract int[] execute();
+}
@@ -0,0 +1,79 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+import java.io.Closeable;
+import java.util.List;
+
+import com.stericson.RootTools.containers.FileEvent;
+
+/**
+ * Tells you when watched files and directories change, without polling them.
+ * <p/>
+ * A single inotifyd, from busybox or toybox, watches all paths as root for as long as the watcher
+ * is open, on a root shell of its own. Events are handed to the listener in batches, on the
+ * watcher's own thread.
+ * <p/>
+ * <pre>
+ * FileWatcher watcher = RootTools.watch(Arrays.asList("/system/xbin", "/data/local"), "ndmy", listener);
+ * ...
+ * watcher.close();
+ * </pre>
+ */
+public abstract class FileWatcher implements Closeable {
+
+    public interface Listener {
+
+        /**
+         * @param events everything that happened since the last call, in order.
+         */
+        void onEvents(List<FileEvent> events);
+    }
+
+    /**
+     * @param invalidateCaches when true, changes to the watched paths also make RootTools forget what
+     *                         it knows about the installed utilities, busybox and where binaries are,
+     *                         and unmounts make it read the mount table again. Watch the directories
+     *                         binaries live in, like /system/xbin, to keep those caches right without
+     *                         asking the shell.
+     */
+    public abstract FileWatcher setInvalidateCaches(boolean invalidateCaches);
+
+    /**
+     * Starts watching, a watcher from RootTools.watch() is already started.
+     *
+     * @throws Exception if inotifyd is not available or the root shell could not be opened.
+     */
+    public abstract void start() throws Exception;
+
+    /**
+     * @return true if inotifyd is watching, false if it was closed or quit, for instance because
+     *         a watched path does not exist.
+     */
+    public abstract boolean isRunning();
+
+    /**
+     * Stops watching, events that were not handed to the listener yet are dropped.
+     */
+    public abstract void close();
+}
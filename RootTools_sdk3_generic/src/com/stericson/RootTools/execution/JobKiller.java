@@ -0,0 +1,166 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.stericson.RootTools.RootTools;
+
+/**
+ * Kills the background job of a stoppable command, along with everything the job started.
+ * <p/>
+ * Jobs in a shell that runs as our own uid are signalled directly. Anything else is killed from
+ * another root shell, as the shell running the job is busy waiting for it: the shared root shell,
+ * or a pooled one when the job runs on the shared root shell itself.
+ */
+final class JobKiller {
+
+    private static final int SIGTERM = 15;
+
+    private JobKiller() {}
+
+    /**
+     * Kills the job on a thread of its own, so that a command can be stopped from its own callbacks.
+     */
+    static void kill(final Shell shell, final int pid) {
+        Thread t = new Thread("Command Stopper") {
+            public void run() {
+                killNow(shell, pid);
+            }
+        };
+        t.start();
+    }
+
+    private static void killNow(Shell shell, int pid) {
+        RootTools.log("Stopping background job " + pid);
+
+        if (shell.getUid() == android.os.Process.myUid()) {
+            for (int process : tree(pid)) {
+                android.os.Process.sendSignal(process, SIGTERM);
+            }
+            return;
+        }
+
+        Shell killer = null;
+        boolean pooled = false;
+
+        try {
+            killer = Shell.startRootShell();
+            if (killer == shell) {
+                killer = ShellPool.acquire();
+                pooled = true;
+            }
+
+            CommandCapture command = new CommandCapture(0, false, script(pid));
+            killer.add(command);
+            command.waitForFinish();
+        } catch (Exception e) {
+            RootTools.log("Could not stop " + pid + ": " + e.getMessage());
+        } finally {
+            if (pooled) {
+                ShellPool.release(killer);
+            }
+        }
+    }
+
+    /**
+     * @return the job and all of its descendants, found through the parent pids in /proc.
+     */
+    private static List<Integer> tree(int pid) {
+        Map<Integer, List<Integer>> children = new HashMap<Integer, List<Integer>>();
+
+        File[] entries = new File("/proc").listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                int child;
+                try {
+                    child = Integer.parseInt(entry.getName());
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                int parent = parentOf(entry);
+                if (parent > 0) {
+                    List<Integer> siblings = children.get(parent);
+                    if (siblings == null) {
+                        siblings = new ArrayList<Integer>();
+                        children.put(parent, siblings);
+                    }
+                    siblings.add(child);
+                }
+            }
+        }
+
+        List<Integer> tree = new ArrayList<Integer>();
+        tree.add(pid);
+        for (int i = 0; i < tree.size(); i++) {
+            List<Integer> next = children.get(tree.get(i));
+            if (next != null) {
+                tree.addAll(next);
+            }
+        }
+        return tree;
+    }
+
+    private static int parentOf(File process) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(new File(process, "stat")));
+            String line = reader.readLine();
+
+            //"pid (comm) state ppid ...", comm may contain spaces and parentheses.
+            int close = line == null ? -1 : line.lastIndexOf(')');
+            if (close == -1) {
+                return -1;
+            }
+            String[] fields = line.substring(close + 1).trim().split(" ");
+            return fields.length > 1 ? Integer.parseInt(fields[1]) : -1;
+        } catch (Exception e) {
+            //gone already, or not ours to read.
+            return -1;
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+            } catch (IOException e) {}
+        }
+    }
+
+    /**
+     * The same walk as tree(), made of shell builtins, followed by a single kill.
+     */
+    private static String script(int pid) {
+        return "rt_all=" + pid + "; rt_new=" + pid + "; while [ -n \"$rt_new\" ]; do rt_par=\" $rt_new \"; rt_new=;"
+                + " for rt_p in /proc/[0-9]*; do read -r rt_s < $rt_p/stat || continue; set -- ${rt_s##*\\) };"
+                + " case \"$rt_par\" in *\" $2 \"*) rt_new=\"$rt_new ${rt_p#/proc/}\";; esac; done;"
+                + " rt_all=\"$rt_all$rt_new\"; done 2>/dev/null; kill $rt_all 2>/dev/null";
+    }
+}
@@ -0,0 +1,47 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+import java.io.Closeable;
+
+/**
+ * Keeps a mount point mounted read/write for as long as it is open, see RootTools.openRemountScope().
+ * <p/>
+ * Scopes on the same mount point are shared by all threads: the first one remounts it as rw and
+ * the mount point is only put back the way it was when the last of them is closed.
+ * <p/>
+ * Always close a scope, preferably in a finally block.
+ */
+public abstract class RemountScope implements Closeable {
+
+    /**
+     * @return the mount point this scope keeps mounted as rw.
+     */
+    public abstract String getMountPoint();
+
+    /**
+     * Leaves the scope. If this was the last user, the mount point is remounted as ro
+     * again, provided that it was ro before the first scope was opened.
+     */
+    public abstract void close();
+}
@@ -39,10 +39,17 @@ public class Shell {
     private final List<Command> commands = new ArrayList<Command>();
 
     //indicates whether or not to close the shell
-    private boolean close = false;
+    private volatile boolean close = false;
+    private int uid = -1;
 
     private static String error = "";
     private static final String token = "F*D^W@#FGF";
+    private static final String uidToken = "U*I^D@#FGF ";
+    //prefixes used to multiplex stderr and its exit code over stdout, see wrapStderr
+    private static final String errorToken = "E*R^R@#FGF ";
+    private static final String exitToken = "X*I^T@#FGF ";
+    //prefix of the line a stoppable command sends its job's pid on
+    static final String pidToken = "P*I^D@#FGF ";
     private static Shell rootShell = null;
     private static Shell shell = null;
     private static Shell customShell = null;
@@ -52,11 +59,10 @@ public class Shell {
     public static boolean isReading = false;
 
     private int maxCommands = 1000;
-    private int read = 0;
-    private int write = 0;
+    private volatile int read = 0;
+    private volatile int write = 0;
     private int totalExecuted = 0;
     private int totalRead = 0;
-    private boolean isCleaning = false;
 
     //private constructor responsible for opening/constructing the shell
     private Shell(String cmd) throws IOException, TimeoutException, RootDeniedException {
@@ -116,6 +122,9 @@ public class Shell {
              * Normal exit
              */
             else {
+                uid = worker.uid;
+                RootTools.log("Shell runs as uid " + uid);
+
                 /**
                  * The shell is open.
                  *
@@ -140,17 +149,15 @@ public class Shell {
 
 
     public Command add(Command command) throws IOException {
-        if (close)
-            throw new IllegalStateException(
-                    "Unable to add commands to a closed shell");
+        synchronized (commands) {
+            if (close)
+                throw new IllegalStateException(
+                        "Unable to add commands to a closed shell");
 
-        while (isCleaning) {
-            //Don't add commands while cleaning
-            ;
+            //cleaning happens while holding the lock as well, so we never add in the middle of it.
+            commands.add(command);
+            commands.notifyAll();
         }
-        commands.add(command);
-
-        notifyThreads();
 
         return command;
     }
@@ -164,16 +171,16 @@ public class Shell {
     }
 
     private void cleanCommands() {
-        isCleaning = true;
-        int toClean = Math.abs(maxCommands - (maxCommands / 4));
-        RootTools.log("Cleaning up: " + toClean);
-        for (int i = 0; i < toClean; i++) {
-            commands.remove(0);
-        }
+        synchronized (commands) {
+            int toClean = Math.abs(maxCommands - (maxCommands / 4));
+            RootTools.log("Cleaning up: " + toClean);
+            for (int i = 0; i < toClean; i++) {
+                commands.remove(0);
+            }
 
-        read = commands.size() - 1;
-        write = commands.size() - 1;
-        isCleaning = false;
+            read = commands.size() - 1;
+            write = commands.size() - 1;
+        }
     }
 
     private void closeQuietly(final Reader input) {
@@ -231,6 +238,29 @@ public class Shell {
         closeShell();
         closeRootShell();
         closeCustomShell();
+        ShellPool.closeAll();
+    }
+
+    /**
+     * @return the uid the shell reported when it was opened, or -1 if it did not tell us.
+     */
+    public int getUid() {
+        return uid;
+    }
+
+    /**
+     * @return true if the shell runs as root. This was checked when the shell was opened, so
+     *         asking costs nothing.
+     */
+    public boolean isRoot() {
+        return uid == 0;
+    }
+
+    /**
+     * @return true once this shell has been closed.
+     */
+    public boolean isClosed() {
+        return close;
     }
 
     public int getCommandQueuePosition(Command cmd) {
@@ -328,13 +358,23 @@ public class Shell {
                      * We write the command followed by the token to indicate
                      * the end of the command execution
                      */
-                    if (write < commands.size()) {
+                    Command cmd = null;
+                    synchronized (commands) {
+                        if (write < commands.size()) {
+                            cmd = commands.get(write);
+                        }
+                    }
+
+                    if (cmd != null) {
                         isExecuting = true;
-                        Command cmd = commands.get(write);
+                        cmd.shell = Shell.this;
                         cmd.startExecution();
                         RootTools.log("Executing: " + cmd.getCommand());
 
-                        out.write(cmd.getCommand());
+                        if (cmd.isCaptureStderr())
+                            out.write(wrapStderr(cmd.getCommand()));
+                        else
+                            out.write(cmd.getCommand());
                         String line = "\necho " + token + " " + totalExecuted + " $?\n";
                         out.write(line);
                         out.flush();
@@ -362,6 +402,19 @@ public class Shell {
         }
     };
 
+    /**
+     * Wraps a command so that its stderr is tagged line by line and sent over stdout.
+     * <p/>
+     * stdout is moved to fd 3 and stderr into a pipe that is read by a loop made of shell builtins,
+     * which prefixes every line with the error token. As the exit code of a pipeline is the one of
+     * the last element, the real exit code is sent on its own line before the loop ends.
+     */
+    private String wrapStderr(String command) {
+        return "{ { { " + command
+                + "} 2>&1 1>&3 3>&-; echo \"" + exitToken + "$?\" 1>&3 3>&-; }"
+                + " | while IFS= read -r rt_err; do echo \"" + errorToken + "$rt_err\"; done; } 3>&1\n";
+    }
+
     protected void notifyThreads() {
         Thread t = new Thread() {
             public void run() {
@@ -381,6 +434,7 @@ public class Shell {
         public void run() {
             try {
                 Command command = null;
+                int capturedExitCode = Integer.MIN_VALUE;
 
                 while (!close) {
                     isReading = false;
@@ -394,13 +448,47 @@ public class Shell {
                         break;
 
                     if (command == null) {
-                        if (read >= commands.size()) {
+                        synchronized (commands) {
+                            if (read < commands.size()) {
+                                command = commands.get(read);
+                            }
+                        }
+
+                        if (command == null) {
                             if (close)
                                 break;
 
                             continue;
                         }
-                        command = commands.get(read);
+                    }
+
+                    /**
+                     * a stoppable command tells us the pid of its job first.
+                     */
+                    if (command.stoppable && command.pid == -1 && line.startsWith(pidToken)) {
+                        try {
+                            command.setPid(Integer.parseInt(line.substring(pidToken.length()).trim()));
+                        } catch (NumberFormatException e) {
+                        }
+                        continue;
+                    }
+
+                    /**
+                     * stderr and the exit code of commands capturing stderr are tagged,
+                     * route them before looking for the token.
+                     */
+                    if (command.captureStderr) {
+                        if (line.startsWith(errorToken)) {
+                            if (!command.stopped)
+                                command.error(command.id, line.substring(errorToken.length()));
+                            continue;
+                        } else if (line.startsWith(exitToken)) {
+                            try {
+                                capturedExitCode = Integer.parseInt(line.substring(exitToken.length()).trim());
+                            } catch (NumberFormatException e) {
+                            }
+                            continue;
+                        }
                     }
 
                     /**
@@ -413,9 +501,10 @@ public class Shell {
 
                     if (pos == -1) {
                         /**
-                         * send the output for the implementer to process
+                         * send the output for the implementer to process, unless it asked us to stop.
                          */
-                        command.output(command.id, line);
+                        if (!command.stopped)
+                            command.output(command.id, line);
                     } else {
 
                         String fields[] = line.split(" ");
@@ -436,6 +525,11 @@ public class Shell {
                             }
 
                             if (id == totalRead) {
+                                if (capturedExitCode != Integer.MIN_VALUE) {
+                                    exitCode = capturedExitCode;
+                                    capturedExitCode = Integer.MIN_VALUE;
+                                }
+
                                 command.setExitCode(exitCode);
                                 command.commandFinished();
                                 command = null;
@@ -459,9 +553,14 @@ public class Shell {
 
                 RootTools.log("Shell destroyed");
 
-                while (read < commands.size()) {
-                    if (command == null)
-                        command = commands.get(read);
+                while (true) {
+                    if (command == null) {
+                        synchronized (commands) {
+                            if (read >= commands.size())
+                                break;
+                            command = commands.get(read);
+                        }
+                    }
 
                     command.terminated("Unexpected Termination.");
                     command = null;
@@ -492,7 +591,7 @@ public class Shell {
         return Shell.startRootShell(timeout, 3);
     }
 
-    public static Shell startRootShell(int timeout, int retry) throws IOException, TimeoutException, RootDeniedException {
+    public static synchronized Shell startRootShell(int timeout, int retry) throws IOException, TimeoutException, RootDeniedException {
 
         Shell.shellTimeout = timeout;
 
@@ -518,11 +617,20 @@ public class Shell {
         return rootShell;
     }
 
+    /**
+     * Opens a root shell of its own, next to the shared one and the pooled ones. Used by the
+     * ShellPool, and by anything that keeps a command running for a long time, so it does not
+     * hold on to a pooled shell. The caller closes it when done.
+     */
+    public static Shell openRootShell() throws IOException, TimeoutException, RootDeniedException {
+        return new Shell("su");
+    }
+
     public static Shell startCustomShell(String shellPath) throws IOException, TimeoutException, RootDeniedException {
         return Shell.startCustomShell(shellPath, 20000);
     }
 
-    public static Shell startCustomShell(String shellPath, int timeout) throws IOException, TimeoutException, RootDeniedException {
+    public static synchronized Shell startCustomShell(String shellPath, int timeout) throws IOException, TimeoutException, RootDeniedException {
         Shell.shellTimeout = timeout;
 
         if (customShell == null) {
@@ -538,7 +646,7 @@ public class Shell {
         return Shell.startShell(20000);
     }
 
-    public static Shell startShell(int timeout) throws IOException, TimeoutException {
+    public static synchronized Shell startShell(int timeout) throws IOException, TimeoutException {
         Shell.shellTimeout = timeout;
 
         try {
@@ -556,6 +664,7 @@ public class Shell {
 
     protected static class Worker extends Thread {
         public int exit = -911;
+        public int uid = -1;
 
         public Process proc;
         public BufferedReader in;
@@ -572,6 +681,10 @@ public class Shell {
             /**
              * Trying to open the shell.
              *
+             * The helper functions are defined first so that they are ready
+             * once the shell reports that it has started. The shell also tells
+             * us who it runs as, mksh and bash know without running id.
+             *
              * We echo "Started" and we look for it in the output.
              *
              * If we find the output then the shell is open and we return.
@@ -580,6 +693,8 @@ public class Shell {
              * it by setting the value of the variable exit
              */
             try {
+                out.write(ShellLibrary.SCRIPT);
+                out.write("echo \"" + uidToken + "${USER_ID:-${EUID:-$(id)}}\"\n");
                 out.write("echo Started\n");
                 out.flush();
 
@@ -590,6 +705,10 @@ public class Shell {
                     }
                     if ("".equals(line))
                         continue;
+                    if (line.startsWith(uidToken)) {
+                        uid = parseUid(line.substring(uidToken.length()).trim());
+                        continue;
+                    }
                     if ("Started".equals(line)) {
                         this.exit = 1;
                         setShellOom();
@@ -608,6 +727,26 @@ public class Shell {
 
         }
 
+        /*
+         * Either a plain number, or the output of id: uid=0(root) gid=0(root)...
+         */
+        private int parseUid(String value) {
+            if (value.startsWith("uid=")) {
+                value = value.substring(4);
+                int end = 0;
+                while (end < value.length() && Character.isDigit(value.charAt(end))) {
+                    end++;
+                }
+                value = value.substring(0, end);
+            }
+
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+
         /*
          * setOom for shell processes (sh and su if root shell)
          * and discard outputs
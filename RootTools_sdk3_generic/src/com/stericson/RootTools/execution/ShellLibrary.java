@@ -0,0 +1,68 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+/**
+ * Shell functions that are defined once in every shell we open, before the shell reports
+ * that it has started.
+ * <p/>
+ * The internal methods call these instead of sending their whole fallback chains with
+ * every command. They rely on builtins such as <code>test</code> wherever possible,
+ * so that we do not pay for a fork+exec when we don't have to.
+ */
+final class ShellLibrary {
+
+    private ShellLibrary() {}
+
+    /**
+     * rt_exists FILE...
+     * Prints every given file that exists (symlinks included, even dangling ones),
+     * returns 0 only if all of them exist.
+     */
+    private static final String EXISTS =
+            "rt_exists() { rt_r=0; for rt_f in \"$@\"; do"
+                    + " if [ -e \"$rt_f\" ] || [ -L \"$rt_f\" ]; then echo \"$rt_f\"; else rt_r=1; fi;"
+                    + " done; return $rt_r; }\n";
+
+    /**
+     * rt_stat FILE...
+     * ls -l through the first toolbox that works.
+     */
+    private static final String STAT =
+            "rt_stat() { ls -l \"$@\" 2>/dev/null"
+                    + " || busybox ls -l \"$@\" 2>/dev/null"
+                    + " || /system/bin/failsafe/toolbox ls -l \"$@\" 2>/dev/null"
+                    + " || toolbox ls -l \"$@\"; }\n";
+
+    /**
+     * rt_remount MODE DEVICE MOUNTPOINT
+     * Remounts the given mount point through the first mount that works.
+     */
+    private static final String REMOUNT =
+            "rt_remount() { busybox mount -o remount,$1 \"$2\" \"$3\" 2>/dev/null"
+                    + " || toolbox mount -o remount,$1 \"$2\" \"$3\" 2>/dev/null"
+                    + " || mount -o remount,$1 \"$2\" \"$3\" 2>/dev/null"
+                    + " || /system/bin/toolbox mount -o remount,$1 \"$2\" \"$3\"; }\n";
+
+    static final String SCRIPT = EXISTS + STAT + REMOUNT;
+}
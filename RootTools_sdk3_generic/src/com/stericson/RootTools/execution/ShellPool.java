@@ -0,0 +1,119 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.exceptions.RootDeniedException;
+
+/**
+ * A few extra root shells, next to the one from Shell.startRootShell().
+ * <p/>
+ * Use these for long running commands, so they do not hold up everything else queued on the root
+ * shell, and for work that can be split up and run in parallel. A shell that is acquired has to be
+ * released again, preferably in a finally block. Do not close it yourself.
+ */
+public final class ShellPool {
+
+    /**
+     * The most pooled shells that will be open at any time.
+     */
+    public static final int MAX_SHELLS = 3;
+
+    private static final List<Shell> all = new ArrayList<Shell>();
+    private static final LinkedList<Shell> idle = new LinkedList<Shell>();
+
+    private ShellPool() {}
+
+    /**
+     * Hands out an idle pooled root shell, opening a new one if none is idle and there is room
+     * for another. Otherwise this waits until another thread releases one.
+     *
+     * @return a root shell that nobody else is using.
+     */
+    public static Shell acquire() throws IOException, TimeoutException, RootDeniedException {
+        //make sure root has been granted before we open more shells.
+        Shell.startRootShell();
+
+        synchronized (all) {
+            while (true) {
+                while (!idle.isEmpty()) {
+                    Shell shell = idle.removeFirst();
+                    if (!shell.isClosed()) {
+                        return shell;
+                    }
+                    all.remove(shell);
+                }
+
+                if (all.size() < MAX_SHELLS) {
+                    RootTools.log("Opening pooled root shell " + (all.size() + 1));
+                    Shell shell = Shell.openRootShell();
+                    all.add(shell);
+                    return shell;
+                }
+
+                try {
+                    all.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TimeoutException("Interrupted while waiting for a pooled shell");
+                }
+            }
+        }
+    }
+
+    /**
+     * Hands a shell from acquire() back to the pool.
+     */
+    public static void release(Shell shell) {
+        synchronized (all) {
+            if (all.contains(shell) && !idle.contains(shell)) {
+                idle.addFirst(shell);
+                all.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Closes all pooled shells, busy or not.
+     */
+    public static void closeAll() throws IOException {
+        List<Shell> shells;
+
+        synchronized (all) {
+            shells = new ArrayList<Shell>(all);
+            all.clear();
+            idle.clear();
+            all.notifyAll();
+        }
+
+        for (Shell shell : shells) {
+            shell.close();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.execution;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.Space;
+
+/**
+ * Measures partitions every so often and tells you when their free space drops below, or climbs
+ * back above, one of the thresholds you set.
+ * <p/>
+ * All partitions are measured in a single pass, see RootTools.getSpace(Collection). Listeners are
+ * called on the watcher's own thread. Close the watcher once you no longer need it.
+ * <p/>
+ * <pre>
+ * SpaceWatcher watcher = RootTools.newSpaceWatcher(60000, listener)
+ *         .watch("/system", 1024 * 1024)
+ *         .watch("/data", 50 * 1024 * 1024, 10 * 1024 * 1024);
+ * watcher.start();
+ * </pre>
+ */
+public final class SpaceWatcher implements Closeable {
+
+    public interface Listener {
+
+        /**
+         * @param space     the partition that crossed the threshold.
+         * @param threshold the threshold that was crossed, in free bytes.
+         * @param below     true if free space dropped below the threshold, false if it climbed back above it.
+         */
+        void onThresholdCrossed(Space space, long threshold, boolean below);
+    }
+
+    private final long interval;
+    private final Listener listener;
+    private final Map<String, long[]> thresholds = new LinkedHashMap<String, long[]>();
+    private final Map<String, Long> lastFree = new HashMap<String, Long>();
+    private Timer timer = null;
+
+    public SpaceWatcher(long interval, Listener listener) {
+        this.interval = interval;
+        this.listener = listener;
+    }
+
+    /**
+     * @param path       a path on the partition to watch.
+     * @param thresholds the amounts of free space, in bytes, to report crossings of.
+     */
+    public synchronized SpaceWatcher watch(String path, long... thresholds) {
+        long[] sorted = thresholds.clone();
+        Arrays.sort(sorted);
+        this.thresholds.put(path, sorted);
+        return this;
+    }
+
+    /**
+     * Starts measuring. The first measurement reports every threshold that free space is already below.
+     */
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+
+        timer = new Timer("Space Watcher", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                check();
+            }
+        }, 0, interval);
+    }
+
+    /**
+     * Stops measuring.
+     */
+    public synchronized void close() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    private void check() {
+        Map<String, long[]> watched;
+        synchronized (this) {
+            watched = new LinkedHashMap<String, long[]>(thresholds);
+        }
+
+        Map<String, Space> spaces = RootTools.getSpace(watched.keySet());
+
+        for (Map.Entry<String, long[]> entry : watched.entrySet()) {
+            Space space = spaces.get(entry.getKey());
+            if (space == null) {
+                continue;
+            }
+
+            Long previous = lastFree.put(entry.getKey(), space.getFree());
+
+            for (long threshold : entry.getValue()) {
+                boolean below = space.getFree() < threshold;
+                boolean wasBelow = previous != null && previous < threshold;
+
+                if (previous == null ? below : below != wasBelow) {
+                    try {
+                        listener.onThresholdCrossed(space, threshold, below);
+                    } catch (Exception e) {
+                        RootTools.log("Space listener failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.stericson.RootTools.RootTools;
+
+/**
+ * Remembers in which of the directories we search binaries are, and are not, found.
+ * <p/>
+ * What we know about a directory is only trusted while the directory keeps the modification
+ * time it had when we looked, as adding or removing a file in it changes that time. Everything
+ * we do not know yet about $PATH, for all the requested binaries, is checked in a single call to
+ * existsAll(); the fallback places only get a second call for the binaries $PATH does not have.
+ * Only definite answers are remembered, a failing root shell makes nothing absent.
+ */
+final class BinaryIndex {
+
+    /**
+     * Where we look when a binary cannot be found in $PATH.
+     */
+    static final String[] PLACES = {"/sbin", "/system/bin", "/system/xbin", "/data/local/xbin",
+            "/data/local/bin", "/system/sd/xbin", "/system/bin/failsafe", "/data/local"};
+
+    private static final BinaryIndex instance = new BinaryIndex();
+
+    private final Map<String, Directory> directories = new HashMap<String, Directory>();
+
+    private BinaryIndex() {}
+
+    static BinaryIndex getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param binaryNames the binaries to look for.
+     * @return for every binary, the directories it was found in. Directories from $PATH come first,
+     *         in $PATH order, the fallback places are only searched when $PATH does not have it.
+     */
+    Map<String, List<String>> find(Set<String> binaryNames) {
+        Set<String> path = new LinkedHashSet<String>();
+        try {
+            for (String dir : RootTools.getPath()) {
+                path.add(normalize(dir));
+            }
+        } catch (Exception e) {
+            RootTools.log("$PATH is not available, more information MAY be available with Debugging on.");
+        }
+
+        Set<String> places = new LinkedHashSet<String>();
+        for (String dir : PLACES) {
+            if (!path.contains(dir)) {
+                places.add(dir);
+            }
+        }
+
+        //$PATH first, the fallback places are only asked about what $PATH does not have.
+        Map<String, List<String>> inPath = lookup(path, binaryNames);
+
+        Set<String> missing = new LinkedHashSet<String>();
+        for (String name : binaryNames) {
+            if (inPath.get(name).isEmpty()) {
+                missing.add(name);
+            }
+        }
+
+        Map<String, List<String>> inPlaces = missing.isEmpty() || places.isEmpty()
+                ? new HashMap<String, List<String>>()
+                : lookup(places, missing);
+
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+        for (String name : binaryNames) {
+            List<String> found = inPath.get(name);
+            if (found.isEmpty() && inPlaces.containsKey(name)) {
+                found = inPlaces.get(name);
+            }
+
+            RootTools.log(name + " was found in " + found);
+            result.put(name, found);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return for every binary, the given directories it is in, in the order the directories were given.
+     */
+    private Map<String, List<String>> lookup(Set<String> dirs, Set<String> binaryNames) {
+        //Work out what we still have to ask for.
+        Map<String, Long> mtimes = new HashMap<String, Long>();
+        List<String> unknown = new ArrayList<String>();
+
+        synchronized (directories) {
+            for (String dir : dirs) {
+                long mtime = new File(dir).lastModified();
+                mtimes.put(dir, mtime);
+
+                Directory directory = directories.get(dir);
+                if (directory == null || directory.mtime != mtime || mtime == 0) {
+                    directory = new Directory(mtime);
+                    directories.put(dir, directory);
+                }
+
+                for (String name : binaryNames) {
+                    if (!directory.present.contains(name) && !directory.absent.contains(name)) {
+                        unknown.add(dir + "/" + name);
+                    }
+                }
+            }
+        }
+
+        //files that could not be checked are left out, so only definite answers end up below.
+        Map<String, Boolean> answers = unknown.isEmpty()
+                ? new HashMap<String, Boolean>()
+                : RootTools.existsAll(unknown);
+
+        Map<String, List<String>> result = new LinkedHashMap<String, List<String>>();
+
+        synchronized (directories) {
+            for (String dir : dirs) {
+                Directory directory = directories.get(dir);
+                if (directory == null || directory.mtime != mtimes.get(dir)) {
+                    //someone else replaced it in the meantime, keep theirs but use our answers.
+                    directory = new Directory(mtimes.get(dir));
+                }
+
+                for (String name : binaryNames) {
+                    Boolean found = answers.get(dir + "/" + name);
+                    if (found != null) {
+                        if (found) {
+                            directory.present.add(name);
+                        } else {
+                            directory.absent.add(name);
+                        }
+                    }
+                }
+            }
+
+            for (String name : binaryNames) {
+                List<String> found = new ArrayList<String>();
+
+                for (String dir : dirs) {
+                    if (isPresent(dir, name, answers)) {
+                        found.add(dir);
+                    }
+                }
+
+                result.put(name, found);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Forgets everything, for instance after a binary has been installed or removed.
+     */
+    void invalidate() {
+        synchronized (directories) {
+            directories.clear();
+        }
+    }
+
+    private boolean isPresent(String dir, String name, Map<String, Boolean> answers) {
+        Boolean found = answers.get(dir + "/" + name);
+        if (found != null) {
+            return found;
+        }
+
+        Directory directory = directories.get(dir);
+        return directory != null && directory.present.contains(name);
+    }
+
+    private static String normalize(String dir) {
+        if (dir.endsWith("/") && !dir.equals("/")) {
+            return dir.substring(0, dir.length() - 1);
+        }
+        return dir;
+    }
+
+    private static class Directory {
+        final long mtime;
+        final Set<String> present = new HashSet<String>();
+        final Set<String> absent = new HashSet<String>();
+
+        Directory(long mtime) {
+            this.mtime = mtime;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * Remembers the applets and version of every busybox binary we have asked about.
+ * <p/>
+ * A binary is asked once, with --list and for its version in the same command. Before an answer is
+ * reused, the size and modification time of the binary are compared, without a shell when this app
+ * can see the binary and through stat as root, which adds the inode, when it cannot. Replacing
+ * busybox therefore gets it asked again.
+ */
+final class BusyBoxRegistry {
+
+    private static final String LIST_SECTION = "@list";
+    private static final String VERSION_SECTION = "@version";
+
+    private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    private BusyBoxRegistry() {}
+
+    /**
+     * @param path the directory busybox is in, with or without a trailing slash, or "" for the
+     *             busybox that comes first in $PATH.
+     * @return what the busybox in that directory provides, nothing if it is not there.
+     */
+    static Entry get(String path) {
+        String binary = locate(path);
+
+        if (binary == null) {
+            return Entry.NONE;
+        }
+
+        String identity = identify(binary);
+
+        synchronized (entries) {
+            Entry entry = entries.get(binary);
+            if (entry != null && identity != null && identity.equals(entry.identity)) {
+                return entry;
+            }
+        }
+
+        Entry entry = probe(binary, identity);
+
+        if (entry == null) {
+            //not cached, the next call asks again.
+            return Entry.NONE;
+        }
+
+        synchronized (entries) {
+            if (identity != null) {
+                entries.put(binary, entry);
+            }
+        }
+
+        return entry;
+    }
+
+    static void invalidate() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    private static String locate(String path) {
+        if (path.length() > 0) {
+            return path.endsWith("/") ? path + "busybox" : path + "/busybox";
+        }
+
+        try {
+            String dir = Toolchain.getInstance().getPath("busybox");
+            return dir != null ? dir + "/busybox" : null;
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return what identifies this build of the binary, or null if it is not there.
+     */
+    private static String identify(String binary) {
+        File file = new File(binary);
+
+        if (file.exists()) {
+            return file.length() + ":" + file.lastModified();
+        }
+
+        FileStat stat = RootTools.stat(Collections.singleton(binary)).get(binary);
+        if (stat != null) {
+            return stat.getSize() + ":" + stat.getLastModified() + ":" + stat.getInode();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return what the binary said, or null if it could not be asked to the end.
+     */
+    private static Entry probe(String binary, String identity) {
+        final List<String> applets = new ArrayList<String>();
+        final String[] version = {""};
+        String quoted = ShellArgs.quote(binary);
+
+        RootTools.log("Asking " + binary + " for its applets and version");
+
+        CommandCapture command = new CommandCapture(0, false,
+                "echo " + LIST_SECTION + "; " + quoted + " --list 2>/dev/null",
+                "echo " + VERSION_SECTION + "; " + quoted + " 2>&1") {
+
+            private String section = "";
+
+            @Override
+            public void output(int id, String line) {
+                if (line.startsWith("@")) {
+                    section = line.trim();
+                } else if (LIST_SECTION.equals(section)) {
+                    if (!line.trim().equals("")) {
+                        applets.add(line.trim());
+                    }
+                } else if (VERSION_SECTION.equals(section)) {
+                    if (line.startsWith("BusyBox") && version[0].equals("")) {
+                        String[] temp = line.split(" ");
+                        if (temp.length > 1) {
+                            version[0] = temp[1];
+                        }
+                    }
+                }
+            }
+        };
+
+        try {
+            Shell.startRootShell().add(command);
+            commandWait(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            RootTools.log("BusyBox was not found, more information MAY be available with Debugging on.");
+            return null;
+        }
+
+        return new Entry(identity, applets, version[0]);
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+
+    static final class Entry {
+        static final Entry NONE = new Entry(null, new ArrayList<String>(), "");
+
+        final String identity;
+        final List<String> applets;
+        final Set<String> appletSet;
+        final String version;
+
+        Entry(String identity, List<String> applets, String version) {
+            this.identity = identity;
+            this.applets = Collections.unmodifiableList(applets);
+            this.appletSet = new HashSet<String>(applets);
+            this.version = version;
+        }
+
+        boolean has(String applet) {
+            return appletSet.contains(applet);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+import com.stericson.RootTools.execution.ShellPool;
+
+/**
+ * Hashes many files at once.
+ * <p/>
+ * Files this app can read are hashed in-process, one file per core at a time, mapping each file
+ * into memory a slice at a time instead of copying it through a buffer. The rest are hashed as
+ * root by md5sum, sha1sum or sha256sum, with as many files per invocation as fit on a command
+ * line and the invocations spread over the pooled shells.
+ */
+final class ChecksumService {
+
+    //how much of a file is mapped at once.
+    private static final long SLICE = 8 * 1024 * 1024;
+
+    private ChecksumService() {}
+
+    /**
+     * @param paths     the files to hash.
+     * @param algorithm "MD5", "SHA-1" or "SHA-256".
+     * @return for every file that could be hashed, its digest, in the order the files were given.
+     * @throws NoSuchAlgorithmException if the algorithm is not one of the above.
+     * @throws InterruptedException     if the calling thread is interrupted while waiting.
+     */
+    static Map<String, byte[]> checksum(Collection<String> paths, final String algorithm)
+            throws NoSuchAlgorithmException, InterruptedException {
+        String tool = tool(algorithm);
+        //fail now rather than once per file.
+        MessageDigest.getInstance(algorithm);
+
+        List<String> local = new ArrayList<String>();
+        List<String> remote = new ArrayList<String>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isFile() && file.canRead()) {
+                local.add(path);
+            } else {
+                remote.add(path);
+            }
+        }
+
+        Map<String, byte[]> digests = new HashMap<String, byte[]>();
+
+        if (!local.isEmpty()) {
+            Map<String, Future<byte[]>> futures = new LinkedHashMap<String, Future<byte[]>>();
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(Runtime.getRuntime().availableProcessors(), local.size()));
+
+            try {
+                for (final String path : local) {
+                    futures.put(path, executor.submit(new Callable<byte[]>() {
+                        public byte[] call() throws Exception {
+                            return hash(new File(path), algorithm);
+                        }
+                    }));
+                }
+
+                for (Map.Entry<String, Future<byte[]>> entry : futures.entrySet()) {
+                    try {
+                        digests.put(entry.getKey(), entry.getValue().get());
+                    } catch (ExecutionException e) {
+                        //it may still be readable as root.
+                        RootTools.log("Could not hash " + entry.getKey() + ": " + e.getMessage());
+                        remote.add(entry.getKey());
+                    }
+                }
+            } finally {
+                //only does something when we were interrupted.
+                executor.shutdownNow();
+            }
+        }
+
+        if (!remote.isEmpty()) {
+            digests.putAll(checksumAsRoot(remote, tool));
+        }
+
+        Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+        for (String path : paths) {
+            byte[] digest = digests.get(path);
+            if (digest != null) {
+                result.put(path, digest);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hashes a file this app can read.
+     */
+    static byte[] hash(File file, String algorithm) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+
+            for (long position = 0; position < size; position += SLICE) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SLICE, size - position)));
+            }
+        } finally {
+            in.close();
+        }
+
+        return digest.digest();
+    }
+
+    private static Map<String, byte[]> checksumAsRoot(List<String> paths, String tool) throws InterruptedException {
+        final Map<String, byte[]> digests = new HashMap<String, byte[]>();
+
+        final String command;
+        try {
+            command = Toolchain.getInstance().resolve(tool);
+        } catch (Exception e) {
+            RootTools.log("Could not probe the toolchain: " + e.getMessage());
+            return digests;
+        }
+
+        if (command == null) {
+            RootTools.log(tool + " is not available, " + paths.size() + " files cannot be hashed");
+            return digests;
+        }
+
+        final List<String> lines = ShellArgs.join(paths, ShellArgs.ARG_BUDGET - command.length());
+        int workers = Math.min(ShellPool.MAX_SHELLS, lines.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        //every worker takes one shell at a time, so we never wait on the pool while holding a shell.
+        for (int w = 0; w < workers; w++) {
+            final int worker = w;
+            final int stride = workers;
+
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    List<String> commands = new ArrayList<String>();
+                    for (int i = worker; i < lines.size(); i += stride) {
+                        commands.add(command + " " + lines.get(i) + " 2>/dev/null");
+                    }
+
+                    CommandCapture capture = new CommandCapture(0, false, commands.toArray(new String[commands.size()])) {
+                        @Override
+                        public void output(int id, String line) {
+                            //"<hex>  <path>"
+                            int space = line.indexOf("  ");
+                            if (space > 0) {
+                                byte[] digest = parseHex(line.substring(0, space));
+                                if (digest != null) {
+                                    synchronized (digests) {
+                                        digests.put(line.substring(space + 2), digest);
+                                    }
+                                }
+                            }
+                        }
+                    };
+
+                    Shell shell = ShellPool.acquire();
+                    try {
+                        shell.add(capture);
+                        commandWait(capture);
+                    } finally {
+                        ShellPool.release(shell);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    RootTools.log("Could not hash as root: " + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return digests;
+    }
+
+    private static String tool(String algorithm) throws NoSuchAlgorithmException {
+        if ("MD5".equalsIgnoreCase(algorithm)) {
+            return "md5sum";
+        } else if ("SHA-1".equalsIgnoreCase(algorithm) || "SHA1".equalsIgnoreCase(algorithm)) {
+            return "sha1sum";
+        } else if ("SHA-256".equalsIgnoreCase(algorithm) || "SHA256".equalsIgnoreCase(algorithm)) {
+            return "sha256sum";
+        }
+        throw new NoSuchAlgorithmException(algorithm + " is not supported, use MD5, SHA-1 or SHA-256");
+    }
+
+    private static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(i * 2), 16);
+            int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
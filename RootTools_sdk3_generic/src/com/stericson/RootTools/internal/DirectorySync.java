@@ -0,0 +1,323 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.DirEntry;
+import com.stericson.RootTools.containers.SyncOptions;
+import com.stericson.RootTools.containers.SyncResult;
+import com.stericson.RootTools.execution.FileOpBatch;
+import com.stericson.RootTools.execution.StreamCallback;
+
+/**
+ * Mirrors a directory this app can read into a directory only root can write, copying only what changed.
+ * <p/>
+ * The destination is listed and stat'ed with a single find. A file is left alone when its size is
+ * the same and the copy is at least as new as the source; same sized files that look older, or all
+ * same sized files if asked for, are compared by MD5, on both sides at once. Everything that has
+ * to change is then done by a single {@link FileOpBatch}, so every mount point involved is
+ * remounted only once.
+ * <p/>
+ * Symbolic links in the source are not followed, a link to a directory could pull in a tree from
+ * anywhere or loop forever. They are skipped and reported instead, and their counterparts in the
+ * destination are left alone, even when deleting extras.
+ */
+final class DirectorySync {
+
+    private DirectorySync() {}
+
+    /**
+     * @param source      the directory to mirror, it must be readable by this app.
+     * @param destination the directory to mirror into, it is created if it does not exist.
+     * @param options     what to do besides copying, null for the defaults.
+     * @return what was done.
+     * @throws Exception if the source is not a directory or the destination cannot be listed.
+     */
+    static SyncResult sync(String source, String destination, SyncOptions options) throws Exception {
+        if (options == null) {
+            options = new SyncOptions();
+        }
+
+        File sourceDir = new File(source);
+        if (!sourceDir.isDirectory()) {
+            throw new Exception(source + " is not a directory");
+        }
+
+        String destinationRoot = strip(destination);
+
+        //relative path -> entry, sorted so that parents come before their children.
+        final Map<String, File> local = new TreeMap<String, File>();
+        List<String> skipped = new ArrayList<String>();
+        walk(sourceDir, sourceDir.getCanonicalPath(), "", local, skipped);
+
+        final Map<String, DirEntry> remote = new TreeMap<String, DirEntry>();
+        final int prefix = destinationRoot.equals("/") ? 1 : destinationRoot.length() + 1;
+        RootTools.list(destinationRoot, 0, null, 0, new StreamCallback<DirEntry>() {
+            public boolean onResult(DirEntry entry) {
+                remote.put(entry.getPath().substring(prefix), entry);
+                return true;
+            }
+        });
+
+        List<String> copied = new ArrayList<String>();
+        List<String> deleted = new ArrayList<String>();
+        List<String> failed = new ArrayList<String>();
+        int unchanged = 0;
+        List<String> toCopy = new ArrayList<String>();
+        List<String> toCreate = new ArrayList<String>();
+        List<String> toReplace = new ArrayList<String>();
+        List<String> toCompare = new ArrayList<String>();
+
+        for (Map.Entry<String, File> entry : local.entrySet()) {
+            String relative = entry.getKey();
+            File file = entry.getValue();
+            DirEntry copy = remote.get(relative);
+
+            if (file.isDirectory()) {
+                if (copy == null || !copy.isDirectory()) {
+                    if (copy != null) {
+                        toReplace.add(relative);
+                    }
+                    toCreate.add(relative);
+                }
+            } else if (copy == null || !copy.isFile()) {
+                if (copy != null) {
+                    toReplace.add(relative);
+                }
+                toCopy.add(relative);
+            } else if (copy.getSize() != file.length()) {
+                toCopy.add(relative);
+            } else if (options.isAlwaysChecksum() || copy.getLastModified() / 1000 < file.lastModified() / 1000) {
+                toCompare.add(relative);
+            } else {
+                unchanged++;
+            }
+        }
+
+        if (!toCompare.isEmpty()) {
+            List<String> paths = new ArrayList<String>();
+            for (String relative : toCompare) {
+                paths.add(local.get(relative).getAbsolutePath());
+                paths.add(child(destinationRoot, relative));
+            }
+            Map<String, byte[]> sums = ChecksumService.checksum(paths, "MD5");
+
+            for (String relative : toCompare) {
+                byte[] localSum = sums.get(local.get(relative).getAbsolutePath());
+                byte[] remoteSum = sums.get(child(destinationRoot, relative));
+                if (localSum != null && remoteSum != null && MessageDigest.isEqual(localSum, remoteSum)) {
+                    unchanged++;
+                } else {
+                    toCopy.add(relative);
+                }
+            }
+        }
+
+        List<String> extras = new ArrayList<String>();
+        if (options.isDeleteExtras()) {
+            Set<String> kept = new HashSet<String>(skipped);
+            String deletedDir = null;
+            for (String relative : remote.keySet()) {
+                //everything below a deleted directory goes with it.
+                if (deletedDir != null && relative.startsWith(deletedDir + "/")) {
+                    continue;
+                }
+                if (kept.contains(relative) || kept.contains(parent(relative))) {
+                    //what stands in for a skipped link is not ours to delete, nor is anything below it.
+                    kept.add(relative);
+                    continue;
+                }
+                if (!local.containsKey(relative)) {
+                    extras.add(relative);
+                    deletedDir = relative;
+                }
+            }
+        }
+
+        //a batch keeps its operations in order, remember which operation belongs to which path.
+        FileOpBatch batch = RootTools.newFileOpBatch().setRemountAsRw(options.isRemountAsRw());
+        Map<Integer, String> copies = new HashMap<Integer, String>();
+        Map<Integer, String> deletes = new HashMap<Integer, String>();
+        Map<Integer, String> changes = new HashMap<Integer, String>();
+
+        for (String relative : toReplace) {
+            changes.put(batch.size(), relative);
+            batch.delete(child(destinationRoot, relative));
+        }
+        if (remote.isEmpty()) {
+            //the destination may not exist yet, mkdir -p does not mind if it does.
+            changes.put(batch.size(), "");
+            batch.mkdir(destinationRoot);
+        }
+        for (String relative : toCreate) {
+            changes.put(batch.size(), relative);
+            batch.mkdir(child(destinationRoot, relative));
+        }
+        Collections.sort(toCopy);
+        for (String relative : toCopy) {
+            copies.put(batch.size(), relative);
+            batch.copy(local.get(relative).getAbsolutePath(), child(destinationRoot, relative));
+        }
+
+        if (options.getOwner() != null) {
+            for (String relative : toCreate) {
+                changes.put(batch.size(), relative);
+                batch.chown(options.getOwner(), child(destinationRoot, relative));
+            }
+            for (String relative : toCopy) {
+                changes.put(batch.size(), relative);
+                batch.chown(options.getOwner(), child(destinationRoot, relative));
+            }
+        }
+
+        Set<String> fresh = new HashSet<String>(toCopy);
+        fresh.addAll(toCreate);
+
+        for (Map.Entry<String, File> entry : local.entrySet()) {
+            String relative = entry.getKey();
+            String mode = entry.getValue().isDirectory() ? options.getDirectoryMode() : options.getMode();
+            if (mode == null) {
+                continue;
+            }
+
+            DirEntry copy = remote.get(relative);
+            if (fresh.contains(relative) || copy == null || copy.getPermissions() != octal(mode)) {
+                changes.put(batch.size(), relative);
+                batch.chmod(mode, child(destinationRoot, relative));
+            }
+        }
+
+        for (String relative : extras) {
+            deletes.put(batch.size(), relative);
+            batch.delete(child(destinationRoot, relative));
+        }
+
+        if (batch.size() == 0) {
+            return new SyncResult(copied, deleted, failed, skipped, unchanged);
+        }
+
+        int[] status = batch.execute();
+
+        for (int i = 0; i < status.length; i++) {
+            String relative;
+            if ((relative = copies.get(i)) != null) {
+                if (status[i] == 0) {
+                    copied.add(relative);
+                } else {
+                    failed.add(relative);
+                }
+            } else if ((relative = deletes.get(i)) != null) {
+                if (status[i] == 0) {
+                    deleted.add(relative);
+                } else {
+                    failed.add(relative);
+                }
+            } else if ((relative = changes.get(i)) != null && status[i] != 0 && !failed.contains(relative)) {
+                failed.add(relative);
+            }
+        }
+
+        RootTools.log("Synced " + source + " to " + destination + ": " + copied.size() + " copied, "
+                + deleted.size() + " deleted, " + unchanged + " unchanged, "
+                + skipped.size() + " skipped, " + failed.size() + " failed");
+
+        return new SyncResult(copied, deleted, failed, skipped, unchanged);
+    }
+
+    /**
+     * @param canonical the canonical path of dir, a child whose canonical path is not the one
+     *                  below it is a symbolic link, or lives below one.
+     */
+    private static void walk(File dir, String canonical, String relative, Map<String, File> files,
+                             List<String> skipped) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        Arrays.sort(children);
+        for (File child : children) {
+            String path = relative.length() == 0 ? child.getName() : relative + "/" + child.getName();
+            File real = new File(canonical, child.getName());
+
+            String childCanonical;
+            try {
+                childCanonical = real.getCanonicalPath();
+            } catch (IOException e) {
+                childCanonical = null;
+            }
+
+            if (childCanonical == null || !childCanonical.equals(real.getAbsolutePath())) {
+                RootTools.log("Not following symbolic link " + child.getAbsolutePath());
+                skipped.add(path);
+                continue;
+            }
+
+            files.put(path, child);
+
+            if (child.isDirectory()) {
+                walk(child, childCanonical, path, files, skipped);
+            }
+        }
+    }
+
+    private static String parent(String relative) {
+        int slash = relative.lastIndexOf('/');
+        return slash == -1 ? "" : relative.substring(0, slash);
+    }
+
+    /**
+     * @return the mode as a number, or -1 for a symbolic mode like "u+x", which is always applied.
+     */
+    private static int octal(String mode) {
+        try {
+            return Integer.parseInt(mode, 8);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String strip(String path) {
+        return path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    private static String child(String root, String relative) {
+        if (relative.length() == 0) {
+            return root;
+        }
+        return root.equals("/") ? "/" + relative : root + "/" + relative;
+    }
+}
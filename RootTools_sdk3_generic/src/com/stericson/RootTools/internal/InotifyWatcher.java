@@ -0,0 +1,258 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.FileEvent;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.FileWatcher;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * The watchers handed out by RootTools.watch().
+ * <p/>
+ * inotifyd runs on a root shell of its own, which is closed with the watcher. Events are gathered
+ * for the given delay after the first one arrives and then handed to the listener all at once.
+ */
+final class InotifyWatcher extends FileWatcher {
+
+    /**
+     * Events that change what is in a directory, or what a file is.
+     */
+    private static final String CHANGES = "" + FileEvent.CREATED + FileEvent.DELETED + FileEvent.MOVED_FROM
+            + FileEvent.MOVED_TO + FileEvent.DELETED_SELF + FileEvent.MOVED_SELF + FileEvent.ATTRIBUTES_CHANGED
+            + FileEvent.CLOSED_AFTER_WRITE;
+
+    private final Collection<String> paths;
+    private final String events;
+    private final long delay;
+    private final Listener listener;
+    private boolean invalidateCaches = false;
+
+    private final List<FileEvent> pending = new ArrayList<FileEvent>();
+    private StoppableCommand command = null;
+    private Shell shell = null;
+    private Timer timer = null;
+
+    /**
+     * @param paths    the files and directories to watch.
+     * @param events   the FileEvent letters to watch for, like "nd" for created and deleted,
+     *                 null for everything.
+     * @param delay    how long to gather events before handing them to the listener, in milliseconds.
+     * @param listener receives the events.
+     */
+    InotifyWatcher(Collection<String> paths, String events, long delay, Listener listener) {
+        this.paths = new ArrayList<String>(paths);
+        this.events = events;
+        this.delay = delay;
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized FileWatcher setInvalidateCaches(boolean invalidateCaches) {
+        this.invalidateCaches = invalidateCaches;
+        return this;
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        if (command != null) {
+            return;
+        }
+
+        String inotifyd = Toolchain.getInstance().resolve("inotifyd");
+        if (inotifyd == null) {
+            throw new Exception("inotifyd is needed to watch files");
+        }
+
+        StringBuilder sb = new StringBuilder(inotifyd).append(" -");
+        for (String path : paths) {
+            sb.append(' ').append(ShellArgs.quote(events == null ? path : path + ":" + events));
+        }
+
+        Shell own = Shell.openRootShell();
+
+        timer = new Timer("File Watcher", true);
+        command = new StoppableCommand(0, sb.toString()) {
+            @Override
+            void line(String line) {
+                FileEvent event = parse(line);
+                if (event != null) {
+                    add(event);
+                }
+            }
+        };
+
+        try {
+            own.add(command);
+            shell = own;
+        } catch (Exception e) {
+            //the command never ran, there is nothing to stop.
+            closeQuietly(own);
+            timer.cancel();
+            timer = null;
+            command = null;
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return command != null && !command.isFinished();
+    }
+
+    @Override
+    public void close() {
+        StoppableCommand stopping;
+        Shell closing;
+
+        synchronized (this) {
+            if (command == null) {
+                return;
+            }
+
+            stopping = command;
+            closing = shell;
+            command = null;
+            shell = null;
+
+            timer.cancel();
+            timer = null;
+            pending.clear();
+        }
+
+        if (!stopping.isFinished()) {
+            stopping.stop();
+        }
+        try {
+            commandWait(stopping);
+        } catch (InterruptedException e) {
+            //closing goes on regardless, leave the interrupt for the caller to see.
+            Thread.currentThread().interrupt();
+        }
+
+        if (closing != null) {
+            closeQuietly(closing);
+        }
+    }
+
+    private static void closeQuietly(Shell own) {
+        try {
+            own.close();
+        } catch (IOException e) {
+            RootTools.log("Could not close the watcher's shell: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param line a line of inotifyd output: the events, the watched path and, for a watched
+     *             directory, the name of the entry, separated by tabs.
+     * @return the event, or null if the line is not an event.
+     */
+    static FileEvent parse(String line) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length < 2) {
+            return null;
+        }
+        return new FileEvent(fields[0], fields[1], fields.length > 2 ? fields[2] : null);
+    }
+
+    private synchronized void add(FileEvent event) {
+        if (timer == null) {
+            return;
+        }
+
+        pending.add(event);
+
+        if (pending.size() == 1) {
+            timer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    deliver();
+                }
+            }, delay);
+        }
+    }
+
+    private void deliver() {
+        List<FileEvent> batch;
+        boolean invalidate;
+
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<FileEvent>(pending);
+            pending.clear();
+            invalidate = invalidateCaches;
+        }
+
+        if (invalidate) {
+            invalidateCaches(batch);
+        }
+
+        try {
+            listener.onEvents(batch);
+        } catch (Exception e) {
+            RootTools.log("File listener failed: " + e.getMessage());
+        }
+    }
+
+    private static void invalidateCaches(List<FileEvent> batch) {
+        boolean changed = false;
+        boolean unmounted = false;
+
+        for (FileEvent event : batch) {
+            if (event.is(FileEvent.UNMOUNTED)) {
+                unmounted = true;
+            }
+            for (int i = 0; i < CHANGES.length(); i++) {
+                if (event.is(CHANGES.charAt(i))) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+
+        if (changed) {
+            RootTools.log("Watched files changed, forgetting the toolchain, busybox and binary locations");
+            Toolchain.invalidate();
+            BusyBoxRegistry.invalidate();
+            BinaryIndex.getInstance().invalidate();
+        }
+        if (unmounted) {
+            MountService.getInstance().invalidate();
+        }
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
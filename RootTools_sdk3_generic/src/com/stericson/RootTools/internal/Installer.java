@@ -180,8 +180,10 @@ class Installer {
     protected String getFileSignature(File f) {
         String signature = "";
         try {
-            signature = getStreamSignature(new FileInputStream(f));
-        } catch (FileNotFoundException ex) {
+            signature = toSignature(ChecksumService.hash(f, "MD5"));
+        } catch (IOException ex) {
+            Log.e(LOG_TAG, ex.toString());
+        } catch (NoSuchAlgorithmException ex) {
             Log.e(LOG_TAG, ex.toString());
         }
         return signature;
@@ -197,13 +199,7 @@ class Installer {
             DigestInputStream dis = new DigestInputStream(is, md);
             byte [] buffer = new byte[4096];
             while(-1 != dis.read(buffer));
-            byte[] digest = md.digest();
-            StringBuffer sb = new StringBuffer();
-
-            for(int i=0; i<digest.length; i++)
-                sb.append(Integer.toHexString(digest[i] & 0xFF));
-
-            signature = sb.toString();
+            signature = toSignature(md.digest());
         } catch (IOException ex) {
             Log.e(LOG_TAG, ex.toString());
         } catch (NoSuchAlgorithmException ex) {
@@ -215,15 +211,19 @@ class Installer {
         return signature;
     }
 
-    private void commandWait(Command cmd) {
-        synchronized (cmd) {
-            try {
-                if (!cmd.isFinished()) {
-                    cmd.wait(2000);
-                }
-            } catch (InterruptedException ex) {
-                Log.e(LOG_TAG, ex.toString());
-            }
-        }
+    /*
+     * Both signatures have to be built the same way, they are only ever compared with each other.
+     */
+    private static String toSignature(byte[] digest) {
+        StringBuffer sb = new StringBuffer();
+
+        for(int i=0; i<digest.length; i++)
+            sb.append(Integer.toHexString(digest[i] & 0xFF));
+
+        return sb.toString();
+    }
+
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
     }
 }
@@ -0,0 +1,226 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.Mount;
+import com.stericson.RootTools.containers.MountTable;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * Keeps a snapshot of the mount table and only builds a new one when the mounts change.
+ * <p/>
+ * When this app can read /proc/mounts and sees the same mounts as the root shell, the table is
+ * read in-process and only parsed again if the kernel hands us something different. Otherwise it
+ * is read through the root shell, without temp files, and kept until we remount something.
+ */
+public final class MountService {
+
+    private static final String MOUNTS = "/proc/mounts";
+
+    private static final MountService instance = new MountService();
+
+    private MountTable table = null;
+    private byte[] raw = null;
+    private boolean stale = true;
+
+    //the root shell we compared our view of the mounts with, and whether the views matched.
+    private Shell comparedWith = null;
+    private boolean sameView = false;
+
+    private MountService() {}
+
+    public static MountService getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the current mount table, the same instance is returned until the mounts change.
+     * @throws Exception if we cannot read the mount table.
+     */
+    public synchronized MountTable getMountTable() throws Exception {
+        Shell rootShell = Shell.startRootShell();
+
+        if (comparedWith != rootShell) {
+            //a new root shell may live in a namespace of its own, check what it sees once.
+            byte[] rootRaw = readThroughShell(rootShell);
+            byte[] ownRaw = readInProcess();
+
+            comparedWith = rootShell;
+            sameView = ownRaw != null && Arrays.equals(ownRaw, rootRaw);
+            RootTools.log("Mount table " + (sameView ? "can" : "cannot") + " be read in-process");
+
+            update(rootRaw);
+        } else if (sameView) {
+            byte[] ownRaw = readInProcess();
+
+            if (ownRaw != null) {
+                update(ownRaw);
+            } else {
+                sameView = false;
+                update(readThroughShell(rootShell));
+            }
+        } else if (stale) {
+            update(readThroughShell(rootShell));
+        }
+
+        return table;
+    }
+
+    /**
+     * Marks the snapshot as outdated, call this after remounting something.
+     */
+    public synchronized void invalidate() {
+        stale = true;
+    }
+
+    private void update(byte[] data) throws IOException {
+        if (table == null || stale || !Arrays.equals(data, raw)) {
+            table = parse(data);
+            raw = data;
+        }
+        stale = false;
+    }
+
+    private byte[] readInProcess() {
+        File file = new File(MOUNTS);
+        if (!file.canRead()) {
+            return null;
+        }
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            RootTools.log(e.getMessage());
+            return null;
+        } finally {
+            try {
+                if (in != null) {
+                    in.close();
+                }
+            } catch (IOException e) {}
+        }
+    }
+
+    private byte[] readThroughShell(Shell shell) throws Exception {
+        final StringBuilder sb = new StringBuilder();
+
+        CommandCapture command = new CommandCapture(0, false, "cat " + MOUNTS) {
+            @Override
+            public void output(int id, String line) {
+                sb.append(line).append('\n');
+            }
+        };
+        command.setCaptureStderr(true);
+        shell.add(command);
+        commandWait(command);
+
+        if (command.getExitCode() != 0) {
+            throw new Exception("Could not read " + MOUNTS);
+        }
+
+        return sb.toString().getBytes("UTF-8");
+    }
+
+    private static MountTable parse(byte[] data) throws IOException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(data), "UTF-8"));
+        List<Mount> mounts = new ArrayList<Mount>();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split(" ");
+            if (fields.length < 4) {
+                continue;
+            }
+
+            mounts.add(new Mount(new File(unescape(fields[0])), // device
+                    new File(unescape(fields[1])), // mountPoint
+                    fields[2], // fstype
+                    fields[3] // flags
+            ));
+        }
+
+        return new MountTable(mounts);
+    }
+
+    /**
+     * The kernel escapes spaces, tabs, newlines and backslashes as octal, \040 and the like.
+     */
+    private static String unescape(String field) {
+        if (field.indexOf('\\') == -1) {
+            return field;
+        }
+
+        StringBuilder sb = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && isOctal(field, i + 1)) {
+                sb.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean isOctal(String field, int start) {
+        if (start + 3 > field.length()) {
+            return false;
+        }
+        for (int i = start; i < start + 3; i++) {
+            char c = field.charAt(i);
+            if (c < '0' || c > '7') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
@@ -22,9 +22,6 @@
 
 package com.stericson.RootTools.internal;
 
-import java.io.File;
-import java.io.IOException;
-import java.util.ArrayList;
 
 import android.util.Log;
 
@@ -63,63 +60,42 @@ public class Remounter {
         if (file.endsWith("/") && !file.equals("/")) {
             file = file.substring(0, file.lastIndexOf("/"));
         }
-        //Make sure that what we are trying to remount is in the mount list.
-        boolean foundMount = false;
-
-        while (!foundMount) {
-            try {
-                for (Mount mount : RootTools.getMounts()) {
-                    RootTools.log(mount.getMountPoint().toString());
-
-                    if (file.equals(mount.getMountPoint().toString())) {
-                        foundMount = true;
-                        break;
-                    }
-                }
-            } catch (Exception e) {
-                if (RootTools.debugMode) {
-                    e.printStackTrace();
-                }
-                return false;
-            }
-            if (!foundMount) {
-                try {
-                    file = (new File(file).getParent());
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return false;
-                }
-            }
-        }
-
+        //Find the mount that the path lives on.
         Mount mountPoint = findMountPointRecursive(file);
 
         if (mountPoint != null) {
 
+            //someone is still writing to this mount, they will put it back when they are done.
+            if (mountType.equalsIgnoreCase("ro") && SharedRemountScope.isHeld(mountPoint.getMountPoint().getAbsolutePath())) {
+                RootTools.log(Constants.TAG, "Not remounting " + mountPoint.getMountPoint().getAbsolutePath() + " as ro, a remount scope is still open");
+                return false;
+            }
+
             RootTools.log(Constants.TAG, "Remounting " + mountPoint.getMountPoint().getAbsolutePath() + " as " + mountType.toLowerCase());
-            final boolean isMountMode = mountPoint.getFlags().contains(mountType.toLowerCase());
+            final boolean isMountMode = mountPoint.hasFlag(mountType.toLowerCase());
 
             if (!isMountMode) {
                 //grab an instance of the internal class
                 try {
                     CommandCapture command = new CommandCapture(0,
                             true,
-                            "busybox mount -o remount," + mountType.toLowerCase() + " " + mountPoint.getDevice().getAbsolutePath() + " " + mountPoint.getMountPoint().getAbsolutePath(),
-                            "toolbox mount -o remount," + mountType.toLowerCase() + " " + mountPoint.getDevice().getAbsolutePath() + " " + mountPoint.getMountPoint().getAbsolutePath(),
-                            "mount -o remount," + mountType.toLowerCase() + " " + mountPoint.getDevice().getAbsolutePath() + " " + mountPoint.getMountPoint().getAbsolutePath(),
-                            "/system/bin/toolbox mount -o remount," + mountType.toLowerCase() + " " + mountPoint.getDevice().getAbsolutePath() + " " + mountPoint.getMountPoint().getAbsolutePath()
+                            "rt_remount " + mountType.toLowerCase()
+                                    + " " + ShellArgs.quote(mountPoint.getDevice().getAbsolutePath())
+                                    + " " + ShellArgs.quote(mountPoint.getMountPoint().getAbsolutePath())
                     );
                     Shell.startRootShell().add(command);
                     commandWait(command);
 
                 } catch (Exception e) {}
 
+                MountService.getInstance().invalidate();
+
                 mountPoint = findMountPointRecursive(file);
             }
 
             if (mountPoint != null) {
                 RootTools.log(Constants.TAG, mountPoint.getFlags() + " AND " + mountType.toLowerCase());
-                if (mountPoint.getFlags().contains(mountType.toLowerCase())) {
+                if (mountPoint.hasFlag(mountType.toLowerCase())) {
                     RootTools.log(mountPoint.getFlags().toString());
                     return true;
                 } else {
@@ -140,22 +116,7 @@ public class Remounter {
 
     private Mount findMountPointRecursive(String file) {
         try {
-            ArrayList<Mount> mounts = RootTools.getMounts();
-
-            for (File path = new File(file); path != null; ) {
-                for (Mount mount : mounts) {
-                    if (mount.getMountPoint().equals(path)) {
-                        return mount;
-                    }
-                }
-            }
-
-            return null;
-
-        } catch (IOException e) {
-            if (RootTools.debugMode) {
-                e.printStackTrace();
-            }
+            return MountService.getInstance().getMountTable().findMount(file);
         } catch (Exception e) {
             if (RootTools.debugMode) {
                 e.printStackTrace();
@@ -165,15 +126,7 @@ public class Remounter {
         return null;
     }
 
-    private void commandWait(Command cmd) {
-        synchronized (cmd) {
-            try {
-                if (!cmd.isFinished()) {
-                    cmd.wait(2000);
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
     }
 }
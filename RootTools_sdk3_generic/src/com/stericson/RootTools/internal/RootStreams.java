@@ -0,0 +1,449 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.content.Context;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.RemountScope;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * Moves the bytes of files only root can get at between them and Java, untouched.
+ * <p/>
+ * Files are streamed through a FIFO in the app's cache directory: a root shell of its own cats the
+ * file into it while the app reads from the other end, or the other way around when writing, so
+ * nothing is written to disk twice and nothing passes through the line based shell output. Without
+ * mkfifo, or when a mapping is asked for, the file is staged in the cache directory instead.
+ */
+final class RootStreams {
+
+    private RootStreams() {}
+
+    static InputStream openRead(Context context, String path) throws IOException {
+        Toolchain toolchain = toolchain();
+        String mkfifo = toolchain.resolve("mkfifo");
+
+        if (mkfifo == null) {
+            RootTools.log("mkfifo is not available, staging " + path);
+            File staged = stage(context, path);
+            try {
+                return new FileInputStream(staged);
+            } finally {
+                //the open stream keeps the data around.
+                staged.delete();
+            }
+        }
+
+        File fifo = createFifo(context, mkfifo, path);
+
+        StoppableCommand writer = new StoppableCommand(0,
+                tool(toolchain, "cat") + " " + ShellArgs.quote(path) + " > " + ShellArgs.quote(fifo.getPath())) {
+            @Override
+            void line(String line) {
+                RootTools.log(line);
+            }
+        };
+
+        Shell shell;
+        try {
+            shell = Shell.openRootShell();
+        } catch (Exception e) {
+            fifo.delete();
+            throw failure("Could not open a root shell to read " + path, e);
+        }
+
+        try {
+            shell.add(writer);
+            //blocks until the shell opens the other end.
+            return new FifoInputStream(path, fifo, writer, shell);
+        } catch (IOException e) {
+            quietly(writer, shell, fifo);
+            throw e;
+        }
+    }
+
+    static OutputStream openWrite(Context context, String path, String mode, String owner, boolean remountAsRw)
+            throws IOException {
+        Toolchain toolchain = toolchain();
+        String mkfifo = toolchain.resolve("mkfifo");
+
+        RemountScope scope = null;
+        if (remountAsRw) {
+            try {
+                scope = SharedRemountScope.open(path);
+            } catch (Exception e) {
+                throw failure("Could not remount " + path, e);
+            }
+        }
+
+        try {
+            if (mkfifo == null) {
+                RootTools.log("mkfifo is not available, staging " + path);
+                File staged = File.createTempFile("rt_", ".tmp", context.getCacheDir());
+                return new StagedOutputStream(path, staged, writeScript(toolchain, staged, path, mode, owner), scope);
+            }
+
+            File fifo = createFifo(context, mkfifo, path);
+
+            StoppableCommand reader = new StoppableCommand(0, writeScript(toolchain, fifo, path, mode, owner)) {
+                @Override
+                void line(String line) {
+                    RootTools.log(line);
+                }
+            };
+
+            Shell shell;
+            try {
+                shell = Shell.openRootShell();
+            } catch (Exception e) {
+                fifo.delete();
+                throw failure("Could not open a root shell to write " + path, e);
+            }
+
+            try {
+                shell.add(reader);
+                //blocks until the shell opens the other end.
+                return new FifoOutputStream(path, fifo, reader, shell, scope);
+            } catch (IOException e) {
+                quietly(reader, shell, fifo);
+                throw e;
+            }
+        } catch (IOException e) {
+            if (scope != null) {
+                scope.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Fills a file next to the destination from the given input, sets its attributes and only then
+     * moves it in place. The input is opened before anything else, so a writer on a FIFO never
+     * waits on a command that failed early.
+     */
+    private static String writeScript(Toolchain toolchain, File input, String path, String mode, String owner) {
+        String tmp = ShellArgs.quote(path + ".rt_tmp");
+        String dd = toolchain.resolve("dd");
+
+        StringBuilder script = new StringBuilder("{ ");
+        if (dd != null) {
+            script.append(dd).append(" of=").append(tmp).append(" bs=1048576 2>/dev/null");
+        } else {
+            script.append(tool(toolchain, "cat")).append(" > ").append(tmp);
+        }
+        if (mode != null) {
+            script.append(" && ").append(tool(toolchain, "chmod")).append(" ").append(ShellArgs.quote(mode))
+                    .append(" ").append(tmp);
+        }
+        if (owner != null) {
+            script.append(" && ").append(tool(toolchain, "chown")).append(" ").append(ShellArgs.quote(owner))
+                    .append(" ").append(tmp);
+        }
+        script.append(" && ").append(tool(toolchain, "mv")).append(" -f ").append(tmp).append(" ")
+                .append(ShellArgs.quote(path));
+        script.append(" || { rm -f ").append(tmp).append("; false; }; } < ").append(ShellArgs.quote(input.getPath()));
+
+        return script.toString();
+    }
+
+    static MappedByteBuffer openMapped(Context context, String path) throws IOException {
+        File staged = stage(context, path);
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(staged, "r");
+            try {
+                //the mapping stays valid after the file is closed and deleted.
+                return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            } finally {
+                file.close();
+            }
+        } finally {
+            staged.delete();
+        }
+    }
+
+    /**
+     * Copies the file into the cache directory. The copy is created by the app first, so it
+     * stays owned by the app while root fills it.
+     */
+    private static File stage(Context context, String path) throws IOException {
+        File staged = File.createTempFile("rt_", ".tmp", context.getCacheDir());
+
+        try {
+            run(tool(toolchain(), "cat") + " " + ShellArgs.quote(path) + " > " + ShellArgs.quote(staged.getPath()),
+                    "Could not read " + path);
+        } catch (IOException e) {
+            staged.delete();
+            throw e;
+        }
+
+        return staged;
+    }
+
+    private static File createFifo(Context context, String mkfifo, String path) throws IOException {
+        File fifo = File.createTempFile("rt_", ".fifo", context.getCacheDir());
+        fifo.delete();
+
+        run(mkfifo + " " + ShellArgs.quote(fifo.getPath()) + " && chmod 666 " + ShellArgs.quote(fifo.getPath()),
+                "Could not create a FIFO for " + path);
+
+        return fifo;
+    }
+
+    private static void run(String commandLine, String error) throws IOException {
+        CommandCapture command = new CommandCapture(0, false, commandLine);
+
+        try {
+            Shell.startRootShell().add(command);
+        } catch (Exception e) {
+            throw failure(error, e);
+        }
+        commandWait(command);
+
+        if (command.getExitCode() != 0) {
+            throw new IOException(error + ", exit code " + command.getExitCode());
+        }
+    }
+
+    private static Toolchain toolchain() throws IOException {
+        try {
+            return Toolchain.getInstance();
+        } catch (Exception e) {
+            throw failure("Could not probe the toolchain", e);
+        }
+    }
+
+    private static String tool(Toolchain toolchain, String util) {
+        String resolved = toolchain.resolve(util);
+        return resolved != null ? resolved : util;
+    }
+
+    private static IOException failure(String message, Exception cause) {
+        IOException e = new IOException(message + ": " + cause.getMessage());
+        e.initCause(cause);
+        return e;
+    }
+
+    /**
+     * Stops the command unless it is done, and gives back everything it held, even when interrupted.
+     */
+    private static void finish(StoppableCommand command, Shell shell, File fifo, RemountScope scope)
+            throws IOException {
+        try {
+            if (!command.isFinished()) {
+                command.stop();
+            }
+            commandWait(command);
+        } finally {
+            try {
+                shell.close();
+            } finally {
+                fifo.delete();
+                if (scope != null) {
+                    scope.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cleans up after a failed open, the failure that got us here is the one to report.
+     */
+    private static void quietly(StoppableCommand command, Shell shell, File fifo) {
+        try {
+            finish(command, shell, fifo, null);
+        } catch (IOException e) {
+            RootTools.log(e.getMessage());
+        }
+    }
+
+    private static void commandWait(Command cmd) throws IOException {
+        try {
+            cmd.waitForFinish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a root command");
+        }
+    }
+
+    /**
+     * Reads the FIFO, and reports a failing cat at the end of the stream rather than an empty file.
+     * Reads through getChannel() do not get that check.
+     */
+    private static final class FifoInputStream extends FileInputStream {
+        private final String path;
+        private final File fifo;
+        private final StoppableCommand writer;
+        private final Shell shell;
+        private boolean closed = false;
+
+        FifoInputStream(String path, File fifo, StoppableCommand writer, Shell shell) throws FileNotFoundException {
+            super(fifo);
+            this.path = path;
+            this.fifo = fifo;
+            this.writer = writer;
+            this.shell = shell;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return checked(super.read());
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return checked(super.read(b));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return checked(super.read(b, off, len));
+        }
+
+        private int checked(int result) throws IOException {
+            if (result < 0) {
+                commandWait(writer);
+                if (writer.getExitCode() != 0) {
+                    throw new IOException("Could not read " + path + ", exit code " + writer.getExitCode());
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+
+            try {
+                super.close();
+            } finally {
+                //a cat still writing gets SIGPIPE now, one still opening the FIFO gets killed.
+                finish(writer, shell, fifo, null);
+            }
+        }
+    }
+
+    /**
+     * Writes into the FIFO. Closing it ends the input of the root side and waits for the file to
+     * be moved into place, so a failed write is reported by close().
+     */
+    private static final class FifoOutputStream extends FileOutputStream {
+        private final String path;
+        private final File fifo;
+        private final StoppableCommand reader;
+        private final Shell shell;
+        private final RemountScope scope;
+        private boolean closed = false;
+
+        FifoOutputStream(String path, File fifo, StoppableCommand reader, Shell shell, RemountScope scope)
+                throws FileNotFoundException {
+            super(fifo);
+            this.path = path;
+            this.fifo = fifo;
+            this.reader = reader;
+            this.shell = shell;
+            this.scope = scope;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+
+            try {
+                super.close();
+                //the file is moved in place once the root side has read everything.
+                commandWait(reader);
+            } finally {
+                finish(reader, shell, fifo, scope);
+            }
+
+            if (reader.getExitCode() != 0) {
+                throw new IOException("Could not write " + path + ", exit code " + reader.getExitCode());
+            }
+        }
+    }
+
+    /**
+     * Writes into a copy in the cache directory, which root moves into place on close().
+     */
+    private static final class StagedOutputStream extends FileOutputStream {
+        private final String path;
+        private final File staged;
+        private final String script;
+        private final RemountScope scope;
+        private boolean closed = false;
+
+        StagedOutputStream(String path, File staged, String script, RemountScope scope) throws FileNotFoundException {
+            super(staged);
+            this.path = path;
+            this.staged = staged;
+            this.script = script;
+            this.scope = scope;
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+
+            try {
+                super.close();
+                run(script, "Could not write " + path);
+            } finally {
+                staged.delete();
+                if (scope != null) {
+                    scope.close();
+                }
+            }
+        }
+    }
+}
@@ -23,34 +23,50 @@
 package com.stericson.RootTools.internal;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
-import java.util.regex.Matcher;
 
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Environment;
-import android.os.StatFs;
 import android.util.Log;
 
 import com.stericson.RootTools.Constants;
 import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.DirEntry;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.containers.FindFilter;
 import com.stericson.RootTools.containers.Mount;
+import com.stericson.RootTools.containers.MountTable;
 import com.stericson.RootTools.containers.Permissions;
+import com.stericson.RootTools.containers.ProcessInfo;
+import com.stericson.RootTools.containers.ProcessTable;
+import com.stericson.RootTools.containers.Space;
 import com.stericson.RootTools.containers.Symlink;
+import com.stericson.RootTools.containers.SyncOptions;
+import com.stericson.RootTools.containers.SyncResult;
 import com.stericson.RootTools.execution.Command;
 import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.FileOpBatch;
+import com.stericson.RootTools.execution.FileWatcher;
+import com.stericson.RootTools.execution.RemountScope;
 import com.stericson.RootTools.execution.Shell;
+import com.stericson.RootTools.execution.ShellPool;
+import com.stericson.RootTools.execution.StreamCallback;
 
 public final class RootToolsInternalMethods {
 
@@ -66,101 +82,14 @@ public final class RootToolsInternalMethods {
     }
 
     public boolean returnPath() throws TimeoutException {
-
-        CommandCapture command = null;
-        LineNumberReader lnr = null;
-        FileReader fr = null;
-
         try {
-            if (!RootTools.exists("/data/local/tmp")) {
-
-                command = new CommandCapture(0, false, "mkdir /data/local/tmp");
-                Shell.startRootShell().add(command);
-                commandWait(command);
-
-            }
-
-            InternalVariables.path = new HashSet<String>();
-
-            String mountedas = RootTools.getMountedAs("/");
-            RootTools.remount("/", "rw");
-
-            command = new CommandCapture(0, false, "chmod 0777 /init.rc");
-            Shell.startRootShell().add(command);
-
-            command = new CommandCapture(0, false,
-                    "dd if=/init.rc of=/data/local/tmp/init.rc");
-            Shell.startRootShell().add(command);
-
-            command = new CommandCapture(0, false,
-                    "chmod 0777 /data/local/tmp/init.rc");
-            Shell.startRootShell().add(command);
-            commandWait(command);
-
-            RootTools.remount("/", mountedas);
-
-            fr = new FileReader("/data/local/tmp/init.rc");
-            lnr = new LineNumberReader(fr);
-
-            String line;
-            while ((line = lnr.readLine()) != null) {
-                RootTools.log(line);
-                if (line.contains("export PATH")) {
-                    int tmp = line.indexOf("/");
-                    InternalVariables.path = new HashSet<String>(
-                            Arrays.asList(line.substring(tmp).split(":")));
-                    return true;
-                }
-            }
-            return false;
+            return !ShellEnvironment.getInstance().getPath().isEmpty();
         } catch (Exception e) {
             if (RootTools.debugMode) {
                 RootTools.log("Error: " + e.getMessage());
                 e.printStackTrace();
             }
             return false;
-        } finally {
-            try {
-                fr.close();
-            } catch (Exception e) {}
-
-            try {
-                lnr.close();
-            } catch (Exception e) {}
-        }
-    }
-
-    public ArrayList<Symlink> getSymLinks() throws IOException {
-
-        LineNumberReader lnr = null;
-        FileReader fr = null;
-
-        try {
-
-            fr = new FileReader("/data/local/symlinks.txt");
-            lnr = new LineNumberReader(fr);
-
-            String line;
-            ArrayList<Symlink> symlink = new ArrayList<Symlink>();
-
-            while ((line = lnr.readLine()) != null) {
-
-                RootTools.log(line);
-
-                String[] fields = line.split(" ");
-                symlink.add(new Symlink(new File(fields[fields.length - 3]), // file
-                        new File(fields[fields.length - 1]) // SymlinkPath
-                ));
-            }
-            return symlink;
-        } finally {
-            try {
-                fr.close();
-            } catch (Exception e) {}
-
-            try {
-                lnr.close();
-            } catch (Exception e) {}
         }
     }
 
@@ -270,85 +199,65 @@ public final class RootToolsInternalMethods {
 
         CommandCapture command = null;
         boolean result = true;
+        RemountScope scope = null;
 
         try {
-            // mount destination as rw before writing to it
+            // mount destination as rw before writing to it, or join whoever already did
             if (remountAsRw) {
-                RootTools.remount(destination, "RW");
+                scope = SharedRemountScope.open(destination);
             }
 
-            // if cp is available and has appropriate permissions
-            if (checkUtil("cp")) {
-                RootTools.log("cp command is available!");
+            Toolchain toolchain = Toolchain.getInstance();
+            String cp = toolchain.resolve("cp");
 
-                if (preserveFileAttributes) {
-                    command = new CommandCapture(0, false, "cp -fp " + source + " " + destination);
-                    Shell.startRootShell().add(command);
-                    commandWait(command);
-
-                    //ensure that the file was copied, an exitcode of zero means success
-                    result = command.getExitCode() == 0;
+            // if cp is available, either on its own or from one of the boxes
+            if (cp != null) {
+                RootTools.log(cp + " command is available!");
 
+                if (preserveFileAttributes) {
+                    command = new CommandCapture(0, false, cp + " -fp " + source + " " + destination);
                 } else {
-                    command = new CommandCapture(0, false, "cp -f " + source + " " + destination);
-                    Shell.startRootShell().add(command);
-                    commandWait(command);
-
-                    //ensure that the file was copied, an exitcode of zero means success
-                    result = command.getExitCode() == 0;
-
+                    command = new CommandCapture(0, false, cp + " -f " + source + " " + destination);
                 }
-            } else {
-                if (checkUtil("busybox") && hasUtil("cp", "busybox")) {
-                    RootTools.log("busybox cp command is available!");
+                Shell.startRootShell().add(command);
+                commandWait(command);
 
-                    if (preserveFileAttributes) {
-                        command = new CommandCapture(0, false, "busybox cp -fp " + source + " " + destination);
-                        Shell.startRootShell().add(command);
-                        commandWait(command);
+                //ensure that the file was copied, an exitcode of zero means success
+                result = command.getExitCode() == 0;
 
-                    } else {
-                        command = new CommandCapture(0, false, "busybox cp -f " + source + " " + destination);
-                        Shell.startRootShell().add(command);
-                        commandWait(command);
+            } else if (toolchain.has("cat")) { // if cp is not available use cat
+                RootTools.log("cp is not available, use cat!");
 
-                    }
-                } else { // if cp is not available use cat
-                    // if cat is available and has appropriate permissions
-                    if (checkUtil("cat")) {
-                        RootTools.log("cp is not available, use cat!");
-
-                        int filePermission = -1;
-                        if (preserveFileAttributes) {
-                            // get permissions of source before overwriting
-                            Permissions permissions = getFilePermissionsSymlinks(source);
-                            filePermission = permissions.getPermissions();
-                        }
+                int filePermission = -1;
+                if (preserveFileAttributes) {
+                    // get permissions of source before overwriting
+                    Permissions permissions = getFilePermissionsSymlinks(source);
+                    filePermission = permissions.getPermissions();
+                }
 
-                        // copy with cat
-                        command = new CommandCapture(0, false, "cat " + source + " > " + destination);
-                        Shell.startRootShell().add(command);
-                        commandWait(command);
+                // copy with cat
+                command = new CommandCapture(0, false, toolchain.resolve("cat") + " " + source + " > " + destination);
+                Shell.startRootShell().add(command);
+                commandWait(command);
 
-                        if (preserveFileAttributes) {
-                            // set premissions of source to destination
-                            command = new CommandCapture(0, false, "chmod " + filePermission + " " + destination);
-                            Shell.startRootShell().add(command);
-                            commandWait(command);
-                        }
-                    } else {
-                        result = false;
-                    }
+                if (preserveFileAttributes) {
+                    // set premissions of source to destination
+                    command = new CommandCapture(0, false, "chmod " + filePermission + " " + destination);
+                    Shell.startRootShell().add(command);
+                    commandWait(command);
                 }
+            } else {
+                result = false;
             }
 
-            // mount destination back to ro
-            if (remountAsRw) {
-                RootTools.remount(destination, "RO");
-            }
         } catch (Exception e) {
             e.printStackTrace();
             result = false;
+        } finally {
+            // mount destination back the way it was, unless others still need it rw
+            if (scope != null) {
+                scope.close();
+            }
         }
 
         if (command != null) {
@@ -368,10 +277,9 @@ public final class RootToolsInternalMethods {
      *         appropriate permissions.
      */
     public boolean checkUtil(String util) {
-        if (RootTools.findBinary(util)) {
+        List<String> binaryPaths = findBinaries(Collections.singleton(util)).get(util);
 
-            List<String> binaryPaths = new ArrayList<String>();
-            binaryPaths.addAll(RootTools.lastFoundBinaryPaths);
+        if (!binaryPaths.isEmpty()) {
 
             for (String path : binaryPaths) {
                 Permissions permissions = RootTools
@@ -407,17 +315,21 @@ public final class RootToolsInternalMethods {
      */
     public boolean deleteFileOrDirectory(String target, boolean remountAsRw) {
         boolean result = true;
+        RemountScope scope = null;
 
         try {
-            // mount destination as rw before writing to it
+            // mount destination as rw before writing to it, or join whoever already did
             if (remountAsRw) {
-                RootTools.remount(target, "RW");
+                scope = SharedRemountScope.open(target);
             }
 
-            if (hasUtil("rm", "toolbox")) {
-                RootTools.log("rm command is available!");
+            String rm = Toolchain.getInstance().resolve("rm");
+
+            if (rm != null) {
+                RootTools.log(rm + " command is available!");
 
-                CommandCapture command = new CommandCapture(0, false, "rm -r " + target);
+                //no -f, a target that does not exist has to fail.
+                CommandCapture command = new CommandCapture(0, false, rm + " -r " + ShellArgs.quote(target));
                 Shell.startRootShell().add(command);
                 commandWait(command);
 
@@ -426,27 +338,17 @@ public final class RootToolsInternalMethods {
                     result = false;
                 }
             } else {
-                if (checkUtil("busybox") && hasUtil("rm", "busybox")) {
-                    RootTools.log("busybox cp command is available!");
-
-                    CommandCapture command = new CommandCapture(0, false, "busybox rm -rf " + target);
-                    Shell.startRootShell().add(command);
-                    commandWait(command);
-
-                    if (command.getExitCode() != 0) {
-                        RootTools.log("target not exist or unable to delete file");
-                        result = false;
-                    }
-                }
+                result = false;
             }
 
-            // mount destination back to ro
-            if (remountAsRw) {
-                RootTools.remount(target, "RO");
-            }
         } catch (Exception e) {
             e.printStackTrace();
             result = false;
+        } finally {
+            // mount destination back the way it was, unless others still need it rw
+            if (scope != null) {
+                scope.close();
+            }
         }
 
         return result;
@@ -455,68 +357,97 @@ public final class RootToolsInternalMethods {
     /**
      * Use this to check whether or not a file exists on the filesystem.
      *
+     * Files this app can see are checked without a shell, the others in one round trip to the
+     * root shell.
+     *
      * @param file String that represent the file, including the full path to the
      *             file and its name.
-     * @return a boolean that will indicate whether or not the file exists.
+     * @return a boolean that will indicate whether or not the file exists, false if the root
+     *         shell could not be asked.
      */
     public boolean exists(final String file) {
-        final List<String> result = new ArrayList<String>();
-
-        CommandCapture command = new CommandCapture(0, false, "ls " + file) {
-            @Override
-            public void output(int arg0, String arg1) {
-                RootTools.log(arg1);
-                result.add(arg1);
-            }
-        };
+        //what this app cannot see itself, only root can tell, ask it once.
+        Boolean exists = existsAll(Collections.singleton(file)).get(file);
+        return exists != null && exists;
+    }
 
-        try {
-            //Try not to open a new shell if one is open.
-            if (!Shell.isAnyShellOpen()) {
-                Shell.startShell().add(command);
-                commandWait(command);
+    /**
+     * Use this to check whether or not many files exist on the filesystem at once.
+     * <p/>
+     * Files this app can see are checked without a shell, all the others are checked
+     * in a single round trip to the root shell.
+     *
+     * @param files the files to check, including their full path.
+     * @return a map from every file to whether or not it exists, in the order the files were given.
+     *         Files that could not be checked, because the root shell failed, are left out.
+     */
+    public Map<String, Boolean> existsAll(Collection<String> files) {
+        final Map<String, Boolean> result = new LinkedHashMap<String, Boolean>();
+        List<String> unknown = new ArrayList<String>();
 
+        for (String file : files) {
+            if (new File(file).exists()) {
+                result.put(file, true);
+            } else {
+                result.put(file, false);
+                unknown.add(file);
             }
-            else {
-                Shell.getOpenShell().add(command);
-                commandWait(command);
-            }
-        } catch (Exception e) {
-            return false;
         }
 
-        for (String line : result) {
-            if (line.trim().equals(file)) {
-                return true;
-            }
+        if (unknown.isEmpty()) {
+            return result;
         }
 
-        try {
-            RootTools.closeShell(false);
-        } catch (Exception e) {
-        }
+        boolean definite = false;
 
-        result.clear();
         try {
-            Shell.startRootShell().add(command);
-            commandWait(command);
+            Shell shell = Shell.startRootShell();
+            List<Command> commands = new ArrayList<Command>();
 
-        } catch (Exception e) {
-            return false;
-        }
+            //queue every chunk before waiting so they are all written in one go.
+            for (String args : ShellArgs.join(unknown, ShellArgs.ARG_BUDGET)) {
+                CommandCapture command = new CommandCapture(0, false, "rt_exists " + args) {
+                    @Override
+                    public void output(int id, String line) {
+                        synchronized (result) {
+                            if (result.containsKey(line)) {
+                                result.put(line, true);
+                            }
+                        }
+                    }
+                };
+                shell.add(command);
+                commands.add(command);
+            }
 
-        //Avoid concurrent modification...
-        List<String> final_result = new ArrayList<String>();
-        final_result.addAll(result);
+            definite = true;
+            for (Command command : commands) {
+                commandWait(command);
 
-        for (String line : final_result) {
-            if (line.trim().equals(file)) {
-                return true;
+                //rt_exists returns 0 or 1, anything else means it did not get to answer.
+                if (command.getExitCode() != 0 && command.getExitCode() != 1) {
+                    definite = false;
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            definite = false;
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
+            definite = false;
         }
 
-        return false;
-
+        synchronized (result) {
+            if (!definite) {
+                //not seen is not the same as not there.
+                for (String file : unknown) {
+                    if (!result.get(file)) {
+                        result.remove(file);
+                    }
+                }
+            }
+            return result;
+        }
     }
 
     /**
@@ -530,12 +461,14 @@ public final class RootToolsInternalMethods {
      *                 RootTools.getWorkingToolbox()
      */
     public void fixUtil(String util, String utilPath) {
+        RemountScope scope = null;
+
         try {
-            RootTools.remount("/system", "rw");
+            scope = SharedRemountScope.open("/system");
+
+            List<String> paths = findBinaries(Collections.singleton(util)).get(util);
 
-            if (RootTools.findBinary(util)) {
-                List<String> paths = new ArrayList<String>();
-                paths.addAll(RootTools.lastFoundBinaryPaths);
+            if (!paths.isEmpty()) {
                 for (String path : paths) {
                     CommandCapture command = new CommandCapture(0, false, utilPath + " rm " + path + "/" + util);
                     Shell.startRootShell().add(command);
@@ -549,8 +482,13 @@ public final class RootToolsInternalMethods {
 
             }
 
-            RootTools.remount("/system", "ro");
         } catch (Exception e) {
+        } finally {
+            if (scope != null) {
+                scope.close();
+            }
+            //the util moved, even if /system/bin does not tell us through its mtime.
+            BinaryIndex.getInstance().invalidate();
         }
     }
 
@@ -567,16 +505,18 @@ public final class RootToolsInternalMethods {
      */
     public boolean fixUtils(String[] utils) throws Exception {
 
+        Toolchain toolchain = Toolchain.getInstance();
+
         for (String util : utils) {
             if (!checkUtil(util)) {
-                if (checkUtil("busybox")) {
-                    if (hasUtil(util, "busybox")) {
-                        fixUtil(util, RootTools.utilPath);
+                if (toolchain.hasBox("busybox")) {
+                    if (toolchain.provides("busybox", util)) {
+                        fixUtil(util, toolchain.getPath("busybox") + "/busybox");
                     }
                 } else {
-                    if (checkUtil("toolbox")) {
-                        if (hasUtil(util, "toolbox")) {
-                            fixUtil(util, RootTools.utilPath);
+                    if (toolchain.hasBox("toolbox")) {
+                        if (toolchain.provides("toolbox", util)) {
+                            fixUtil(util, toolchain.getPath("toolbox") + "/toolbox");
                         }
                     } else {
                         return false;
@@ -595,59 +535,31 @@ public final class RootToolsInternalMethods {
      *         found in more than one location this will contain all of these locations.
      */
     public boolean findBinary(String binaryName) {
-        boolean found = false;
-        RootTools.lastFoundBinaryPaths.clear();
-
-        List<String> list = new ArrayList<String>();
-
         RootTools.log("Checking for " + binaryName);
 
-        try {
-            Set<String> paths = RootTools.getPath();
-            if (paths.size() > 0) {
-                for (String path : paths) {
-                    if (RootTools.exists(path + "/" + binaryName)) {
-                        RootTools.log(binaryName + " was found here: " + path);
-                        list.add(path);
-                        found = true;
-                    } else {
-                        RootTools.log(binaryName + " was NOT found here: " + path);
-                    }
-                }
-            }
-        } catch (TimeoutException ex) {
-            RootTools.log("TimeoutException!!!");
-        } catch (Exception e) {
-            RootTools.log(binaryName + " was not found, more information MAY be available with Debugging on.");
-        }
-
-        if (!found) {
-            RootTools.log("Trying second method");
-            RootTools.log("Checking for " + binaryName);
-            String[] places = {"/sbin/", "/system/bin/", "/system/xbin/", "/data/local/xbin/",
-                    "/data/local/bin/", "/system/sd/xbin/", "/system/bin/failsafe/", "/data/local/"};
-            for (String where : places) {
-                if (RootTools.exists(where + binaryName)) {
-                    RootTools.log(binaryName + " was found here: " + where);
-                    list.add(where);
-                    found = true;
-                } else {
-                    RootTools.log(binaryName + " was NOT found here: " + where);
-                }
-            }
-        }
-
-        if (RootTools.debugMode) {
-            for (String path : list) {
-                RootTools.log("Paths: " + path);
-            }
-        }
+        List<String> list = new ArrayList<String>(findBinaries(Collections.singleton(binaryName)).get(binaryName));
 
         Collections.reverse(list);
 
-        RootTools.lastFoundBinaryPaths.addAll(list);
+        //a new list for every call, so a caller still reading the previous one is not disturbed.
+        RootTools.lastFoundBinaryPaths = list;
 
-        return found;
+        return !list.isEmpty();
+    }
+
+    /**
+     * Looks for many binaries at once, every directory in $PATH and the usual places
+     * are searched for all of them in a single round trip.
+     * <p/>
+     * Where binaries are found, or not, is remembered for as long as the directory
+     * they were searched in is not modified.
+     *
+     * @param binaryNames the binaries to find.
+     * @return for every binary, the directories it was found in, in the order the shell
+     *         would search them. The list is empty if the binary was not found.
+     */
+    public Map<String, List<String>> findBinaries(Set<String> binaryNames) {
+        return BinaryIndex.getInstance().find(binaryNames);
     }
 
     /**
@@ -659,90 +571,139 @@ public final class RootToolsInternalMethods {
      */
     public List<String> getBusyBoxApplets(String path) throws Exception {
 
-        if (path != null && !path.endsWith("/") && !path.equals("")) {
-            path += "/";
-        } else if (path == null) {
+        if (path == null) {
             //Don't know what the user wants to do...what am I pshycic?
             throw new Exception("Path is null, please specifiy a path");
         }
 
-        final List<String> results = new ArrayList<String>();
+        return new ArrayList<String>(BusyBoxRegistry.get(path).applets);
+    }
 
-        CommandCapture command = new CommandCapture(Constants.BBA, false, path + "busybox --list") {
+    /**
+     * @return BusyBox version is found, "" if not found.
+     */
+    public String getBusyBoxVersion(String path) {
+        RootTools.log("Getting BusyBox Version");
+        return BusyBoxRegistry.get(path).version;
+    }
 
-            @Override
-            public void output(int id, String line) {
-                if (id == Constants.BBA) {
-                    if (!line.trim().equals("") && !line.trim().contains("not found")) {
-                        results.add(line);
-                    }
-                }
-            }
-        };
-        Shell.startRootShell().add(command);
-        commandWait(command);
+    /**
+     * @return long Size, converted to kilobytes (from xxx or xxxm or xxxk etc.)
+     */
+    public long getConvertedSpace(String spaceStr) {
+        return SpaceService.kilobytes(spaceStr);
+    }
 
-        return results;
+    /**
+     * Streams the entries of a directory, as they are found, to the given callback.
+     *
+     * @param path        the directory to list.
+     * @param maxDepth    how deep to descend, 1 lists only the directory itself, 0 or less has no limit.
+     * @param namePattern only list entries whose name matches this shell pattern, null to list all.
+     * @param limit       stop after this many entries, 0 or less has no limit.
+     * @param callback    receives every entry, return false from it to stop listing.
+     * @return the number of entries handed to the callback.
+     * @throws Exception if find or stat is not available, or the root shell could not be opened.
+     */
+    public int list(String path, int maxDepth, String namePattern, int limit,
+                    StreamCallback<DirEntry> callback) throws Exception {
+        return find(path, new FindFilter().setMaxDepth(maxDepth).setName(namePattern), limit, callback);
     }
 
     /**
-     * @return BusyBox version is found, "" if not found.
+     * Streams the entries below a directory that match the filter, as they are found, to the given
+     * callback. The filter is handed to find, and find is killed once we have enough.
+     *
+     * @param path     the directory to search.
+     * @param filter   what to look for.
+     * @param limit    stop after this many entries, 0 or less has no limit.
+     * @param callback receives every match, return false from it to stop searching.
+     * @return the number of entries handed to the callback.
+     * @throws Exception if find or stat is not available, or the root shell could not be opened.
      */
-    public String getBusyBoxVersion(String path) {
+    public int find(String path, FindFilter filter, final int limit,
+                    final StreamCallback<DirEntry> callback) throws Exception {
+        final String root = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        final StatFormat format = StatFormat.getInstance();
+        String find = Toolchain.getInstance().resolve("find");
+
+        if (format == null || find == null) {
+            throw new Exception("find and stat are needed to search " + path);
+        }
 
-        if (!path.equals("") && !path.endsWith("/")) {
-            path += "/";
+        StringBuilder sb = new StringBuilder(find).append(' ').append(ShellArgs.quote(root)).append(" -mindepth 1");
+        if (filter.getMaxDepth() > 0) {
+            sb.append(" -maxdepth ").append(filter.getMaxDepth());
+        }
+        for (String test : findTests(filter)) {
+            sb.append(' ').append(test);
         }
+        sb.append(" -exec ").append(format.command()).append(" {} + 2>/dev/null");
 
-        RootTools.log("Getting BusyBox Version");
-        InternalVariables.busyboxVersion = "";
-        try {
-            CommandCapture command = new CommandCapture(Constants.BBV, false, path + "busybox") {
-                @Override
-                public void output(int id, String line) {
-                    if (id == Constants.BBV) {
-                        if (line.startsWith("BusyBox") && InternalVariables.busyboxVersion.equals("")) {
-                            String[] temp = line.split(" ");
-                            InternalVariables.busyboxVersion = temp[1];
-                        }
+        final int[] count = {0};
+
+        //find stats the entries in batches as it goes, nothing is collected on either side.
+        StoppableCommand command = new StoppableCommand(0, sb.toString()) {
+            @Override
+            void line(String line) {
+                FileStat stat = format.parse(line);
+                if (stat == null) {
+                    return;
+                }
+
+                String relative = stat.getPath().substring(root.equals("/") ? 1 : root.length() + 1);
+                int depth = 1;
+                for (int i = 0; i < relative.length(); i++) {
+                    if (relative.charAt(i) == '/') {
+                        depth++;
                     }
                 }
-            };
-            Shell.startRootShell().add(command);
-            commandWait(command);
 
-        } catch (Exception e) {
-            RootTools.log("BusyBox was not found, more information MAY be available with Debugging on.");
-            return "";
+                count[0]++;
+                if (!callback.onResult(new DirEntry(stat, depth)) || (limit > 0 && count[0] >= limit)) {
+                    stop();
+                }
+            }
+        };
+
+        Shell shell = ShellPool.acquire();
+        try {
+            shell.add(command);
+            commandWait(command);
+        } finally {
+            ShellPool.release(shell);
         }
 
-        return InternalVariables.busyboxVersion;
+        return count[0];
     }
 
     /**
-     * @return long Size, converted to kilobytes (from xxx or xxxm or xxxk etc.)
+     * @return the find tests for the filter's conditions, quoted where needed.
      */
-    public long getConvertedSpace(String spaceStr) {
-        try {
-            double multiplier = 1.0;
-            char c;
-            StringBuffer sb = new StringBuffer();
-            for (int i = 0; i < spaceStr.length(); i++) {
-                c = spaceStr.charAt(i);
-                if (!Character.isDigit(c) && c != '.') {
-                    if (c == 'm' || c == 'M') {
-                        multiplier = 1024.0;
-                    } else if (c == 'g' || c == 'G') {
-                        multiplier = 1024.0 * 1024.0;
-                    }
-                    break;
-                }
-                sb.append(spaceStr.charAt(i));
-            }
-            return (long) Math.ceil(Double.valueOf(sb.toString()) * multiplier);
-        } catch (Exception e) {
-            return -1;
+    private static List<String> findTests(FindFilter filter) {
+        List<String> tests = new ArrayList<String>();
+
+        if (filter.getName() != null) {
+            tests.add("-name " + ShellArgs.quote(filter.getName()));
         }
+        if (filter.getType() != 0) {
+            tests.add("-type " + filter.getType());
+        }
+        //find rounds sizes up to its unit, c counts bytes. +n means more than n, -n less than n.
+        if (filter.getMinSize() > 0) {
+            tests.add("-size +" + (filter.getMinSize() - 1) + "c");
+        }
+        if (filter.getMaxSize() >= 0) {
+            tests.add("-size -" + (filter.getMaxSize() + 1) + "c");
+        }
+        if (filter.getModifiedWithin() >= 0) {
+            tests.add("-mmin -" + filter.getModifiedWithin());
+        }
+        if (filter.getModifiedBefore() >= 0) {
+            tests.add("-mmin +" + filter.getModifiedBefore());
+        }
+
+        return tests;
     }
 
     /**
@@ -753,25 +714,8 @@ public final class RootToolsInternalMethods {
      * @return String The inode number for this file or "" if the inode number could not be found.
      */
     public String getInode(String file) {
-        try {
-            CommandCapture command = new CommandCapture(Constants.GI, false, "/data/local/ls -i " + file) {
-
-                @Override
-                public void output(int id, String line) {
-                    if (id == Constants.GI) {
-                        if (!line.trim().equals("") && Character.isDigit((char) line.trim().substring(0, 1).toCharArray()[0])) {
-                            InternalVariables.inode = line.trim().split(" ")[0];
-                        }
-                    }
-                }
-            };
-            Shell.startRootShell().add(command);
-            commandWait(command);
-
-            return InternalVariables.inode;
-        } catch (Exception ignore) {
-            return "";
-        }
+        FileStat stat = stat(Collections.singleton(file)).get(file);
+        return stat != null ? String.valueOf(stat.getInode()) : "";
     }
 
     /**
@@ -781,34 +725,13 @@ public final class RootToolsInternalMethods {
     public boolean isAccessGiven() {
         try {
             RootTools.log("Checking for Root access");
-            InternalVariables.accessGiven = false;
 
-            CommandCapture command = new CommandCapture(Constants.IAG, false, "id") {
-                @Override
-                public void output(int id, String line) {
-                    if (id == Constants.IAG) {
-                        Set<String> ID = new HashSet<String>(Arrays.asList(line.split(" ")));
-                        for (String userid : ID) {
-                            RootTools.log(userid);
-
-                            if (userid.toLowerCase().contains("uid=0")) {
-                                InternalVariables.accessGiven = true;
-                                RootTools.log("Access Given");
-                                break;
-                            }
-                        }
-                        if (!InternalVariables.accessGiven) {
-                            RootTools.log("Access Denied?");
-                        }
-                    }
-                }
-            };
-            Shell.startRootShell().add(command);
-            commandWait(command);
-
-            if (InternalVariables.accessGiven) {
+            //the shell checked its uid when it was opened, a new shell checks again.
+            if (Shell.startRootShell().isRoot()) {
+                RootTools.log("Access Given");
                 return true;
             } else {
+                RootTools.log("Access Denied?");
                 return false;
             }
 
@@ -820,7 +743,6 @@ public final class RootToolsInternalMethods {
 
     public boolean isNativeToolsReady(int nativeToolsId, Context context) {
         RootTools.log("Preparing Native Tools");
-        InternalVariables.nativeToolsReady = false;
 
         Installer installer;
         try {
@@ -833,12 +755,10 @@ public final class RootToolsInternalMethods {
         }
 
         if (installer.isBinaryInstalled("nativetools")) {
-            InternalVariables.nativeToolsReady = true;
+            return true;
         } else {
-            InternalVariables.nativeToolsReady = installer.installBinary(nativeToolsId,
-                    "nativetools", "700");
+            return installer.installBinary(nativeToolsId, "nativetools", "700");
         }
-        return InternalVariables.nativeToolsReady;
     }
 
     /**
@@ -850,15 +770,24 @@ public final class RootToolsInternalMethods {
      */
     public Permissions getFilePermissionsSymlinks(String file) {
         RootTools.log("Checking permissions for " + file);
+
+        try {
+            //a single stat tells us whether the file exists as well.
+            if (StatFormat.getInstance() != null) {
+                FileStat stat = stat(Collections.singleton(file)).get(file);
+                return stat != null ? getPermissions(stat) : null;
+            }
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
+        }
+
         if (RootTools.exists(file)) {
             RootTools.log(file + " was found.");
             try {
+                final Permissions[] result = new Permissions[1];
 
                 CommandCapture command = new CommandCapture(
-                        Constants.FPS, false, "ls -l " + file,
-                        "busybox ls -l " + file,
-                        "/system/bin/failsafe/toolbox ls -l " + file,
-                        "toolbox ls -l " + file) {
+                        Constants.FPS, false, "rt_stat " + ShellArgs.quote(file)) {
                     @Override
                     public void output(int id, String line) {
                         if (id == Constants.FPS) {
@@ -880,9 +809,9 @@ public final class RootToolsInternalMethods {
                             } catch (Exception e) {}
 
                             try {
-                                InternalVariables.permissions = getPermissions(line);
-                                if (InternalVariables.permissions != null) {
-                                    InternalVariables.permissions.setSymlink(symlink_final);
+                                result[0] = getPermissions(line);
+                                if (result[0] != null) {
+                                    result[0].setSymlink(symlink_final);
                                 }
                             } catch (Exception e) {
                                 RootTools.log(e.getMessage());
@@ -893,7 +822,7 @@ public final class RootToolsInternalMethods {
                 Shell.startRootShell().add(command);
                 commandWait(command);
 
-                return InternalVariables.permissions;
+                return result[0];
 
             } catch (Exception e) {
                 RootTools.log(e.getMessage());
@@ -904,6 +833,88 @@ public final class RootToolsInternalMethods {
         return null;
     }
 
+    /**
+     * Describes a FileStat the way getPermissions() describes a line of ls -l.
+     */
+    private Permissions getPermissions(FileStat stat) {
+        int mode = stat.getMode();
+        Permissions permissions = new Permissions();
+
+        permissions.setType(stat.isDirectory() ? "d" : stat.isSymlink() ? "l" : "-");
+        permissions.setUserPermissions(rwx(mode >> 6, (mode & 04000) != 0, 's'));
+        permissions.setGroupPermissions(rwx(mode >> 3, (mode & 02000) != 0, 's'));
+        permissions.setOtherPermissions(rwx(mode, (mode & 01000) != 0, 't'));
+        permissions.setPermissions(((mode >> 9) & 7) * 1000 + ((mode >> 6) & 7) * 100
+                + ((mode >> 3) & 7) * 10 + (mode & 7));
+        permissions.setSymlink(stat.getSymlinkTarget() != null ? stat.getSymlinkTarget() : "");
+
+        return permissions;
+    }
+
+    private static String rwx(int bits, boolean special, char specialChar) {
+        char x = (bits & 1) != 0 ? 'x' : '-';
+        if (special) {
+            x = (bits & 1) != 0 ? specialChar : Character.toUpperCase(specialChar);
+        }
+        return "" + ((bits & 4) != 0 ? 'r' : '-') + ((bits & 2) != 0 ? 'w' : '-') + x;
+    }
+
+    /**
+     * Use this to stat many files at once, with a single stat invocation per few thousand files.
+     * Symlinks are not followed.
+     *
+     * @param files the files to stat, including their full path.
+     * @return a map from every file that exists to its FileStat, in the order the files were given.
+     *         The map is empty if no stat could be found on the device.
+     */
+    public Map<String, FileStat> stat(Collection<String> files) {
+        final Map<String, FileStat> found = new HashMap<String, FileStat>();
+
+        try {
+            final StatFormat format = StatFormat.getInstance();
+
+            if (format != null && !files.isEmpty()) {
+                Shell shell = Shell.startRootShell();
+                List<Command> commands = new ArrayList<Command>();
+                String stat = format.command();
+
+                //queue every chunk before waiting so they are all written in one go.
+                for (String args : ShellArgs.join(files, ShellArgs.ARG_BUDGET - stat.length())) {
+                    CommandCapture command = new CommandCapture(0, false, stat + " " + args + " 2>/dev/null") {
+                        @Override
+                        public void output(int id, String line) {
+                            FileStat fileStat = format.parse(line);
+                            if (fileStat != null) {
+                                synchronized (found) {
+                                    found.put(fileStat.getPath(), fileStat);
+                                }
+                            }
+                        }
+                    };
+                    shell.add(command);
+                    commands.add(command);
+                }
+
+                for (Command command : commands) {
+                    commandWait(command);
+                }
+            }
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
+        }
+
+        Map<String, FileStat> result = new LinkedHashMap<String, FileStat>();
+        synchronized (found) {
+            for (String file : files) {
+                if (found.containsKey(file)) {
+                    result.put(file, found.get(file));
+                }
+            }
+        }
+
+        return result;
+    }
+
     /**
      * This will return an ArrayList of the class Mount. The class mount contains the following
      * property's: device mountPoint type flags
@@ -914,52 +925,69 @@ public final class RootToolsInternalMethods {
      * @throws Exception if we cannot return the mount points.
      */
     public ArrayList<Mount> getMounts() throws Exception {
+        return new ArrayList<Mount>(getMountTable().getMounts());
+    }
 
-        Shell shell = RootTools.getShell(true);
-
-        CommandCapture cmd = new CommandCapture(0,
-                "cat /proc/mounts > /data/local/RootToolsMounts",
-                "chmod 0777 /data/local/RootToolsMounts");
-        shell.add(cmd);
-        this.commandWait(cmd);
+    /**
+     * This will return a snapshot of the mount table. The same snapshot is returned until the
+     * mounts change, or until RootTools remounts something.
+     *
+     * @return <code>MountTable</code> the current mount table.
+     * @throws Exception if we cannot return the mount points.
+     */
+    public MountTable getMountTable() throws Exception {
+        return MountService.getInstance().getMountTable();
+    }
 
-        LineNumberReader lnr = null;
-        FileReader fr = null;
+    /**
+     * Opens, or joins, a scope that keeps the mount point of the given path mounted as rw until
+     * every scope on it has been closed.
+     *
+     * @param path a path on the mount point to remount, the file does not need to exist.
+     * @return the scope, close it once you are done writing.
+     * @throws Exception if the mount table cannot be read, the path is not on any mount or the
+     *                   mount point could not be remounted as rw.
+     */
+    public RemountScope openRemountScope(String path) throws Exception {
+        return SharedRemountScope.open(path);
+    }
 
-        try {
-            fr = new FileReader("/data/local/RootToolsMounts");
-            lnr = new LineNumberReader(fr);
-            String line;
-            ArrayList<Mount> mounts = new ArrayList<Mount>();
-            while ((line = lnr.readLine()) != null) {
-
-                RootTools.log(line);
-
-                String[] fields = line.split(" ");
-                mounts.add(new Mount(new File(fields[0]), // device
-                        new File(fields[1]), // mountPoint
-                        fields[2], // fstype
-                        fields[3] // flags
-                ));
-            }
-            InternalVariables.mounts = mounts;
+    /**
+     * @return an empty batch of file operations to run as root.
+     */
+    public FileOpBatch newFileOpBatch() {
+        return new ShellFileOpBatch();
+    }
 
-            if (InternalVariables.mounts != null) {
-                return InternalVariables.mounts;
-            } else {
-                throw new Exception();
-            }
-        } finally {
-            try {
-                fr.close();
-                fr = null;
-            } catch (Exception e) {}
+    /**
+     * Mirrors a directory this app can read into a directory only root can write, copying only
+     * what changed.
+     *
+     * @param source      the directory to mirror, it must be readable by this app.
+     * @param destination the directory to mirror into, it is created if it does not exist.
+     * @param options     what to do besides copying, null for the defaults.
+     * @return what was done.
+     * @throws Exception if the source is not a directory or the destination cannot be listed.
+     */
+    public SyncResult sync(String source, String destination, SyncOptions options) throws Exception {
+        return DirectorySync.sync(source, destination, options);
+    }
 
-            try {
-                lnr.close();
-                lnr = null;
-            } catch (Exception e) {}
-        }
+    /**
+     * Starts watching the given files and directories with inotifyd, as root.
+     *
+     * @param paths    the files and directories to watch.
+     * @param events   the FileEvent letters to watch for, null for everything.
+     * @param delay    how long to gather events before handing them to the listener, in milliseconds.
+     * @param listener receives the events.
+     * @return the running watcher.
+     * @throws Exception if inotifyd is not available or the root shell could not be opened.
+     */
+    public FileWatcher watch(Collection<String> paths, String events, long delay, FileWatcher.Listener listener)
+            throws Exception {
+        FileWatcher watcher = new InotifyWatcher(paths, events, delay, listener);
+        watcher.start();
+        return watcher;
     }
 
     /**
@@ -971,34 +999,26 @@ public final class RootToolsInternalMethods {
      * @throws Exception if we cannot determine how the mount is mounted.
      */
     public String getMountedAs(String path) throws Exception {
-        InternalVariables.mounts = getMounts();
-        String mp;
-        if (InternalVariables.mounts != null) {
-            for (Mount mount : InternalVariables.mounts) {
-
-                mp = mount.getMountPoint().getAbsolutePath();
-
-                if (mp.equals("/")) {
-                    if (path.equals("/")) {
-                        return (String) mount.getFlags().toArray()[0];
-                    }
-                    else {
-                        continue;
-                    }
-                }
-
-                if (path.equals(mp) || path.startsWith(mp + "/")) {
-                    RootTools.log((String) mount.getFlags().toArray()[0]);
-                    return (String) mount.getFlags().toArray()[0];
-                }
-            }
+        Mount mount = getMountTable().findMount(path);
 
-            throw new Exception();
+        if (mount != null) {
+            RootTools.log(mount.getMode());
+            return mount.getMode();
         } else {
             throw new Exception();
         }
     }
 
+    /**
+     * This will return the exported environment of the root shell.
+     *
+     * @return <code>Map<String, String></code> every exported variable and its value.
+     * @throws Exception if the root shell cannot be opened.
+     */
+    public Map<String, String> getEnvironment() throws Exception {
+        return ShellEnvironment.getInstance().getVariables();
+    }
+
     /**
      * This will return the environment variable $PATH
      *
@@ -1006,15 +1026,13 @@ public final class RootToolsInternalMethods {
      * @throws Exception if we cannot return the $PATH variable
      */
     public Set<String> getPath() throws Exception {
-        if (InternalVariables.path != null) {
-            return InternalVariables.path;
-        } else {
-            if (returnPath()) {
-                return InternalVariables.path;
-            } else {
-                throw new Exception();
-            }
+        Set<String> path = ShellEnvironment.getInstance().getPath();
+
+        if (path.isEmpty()) {
+            throw new Exception();
         }
+
+        return path;
     }
 
     /**
@@ -1026,65 +1044,40 @@ public final class RootToolsInternalMethods {
      * @throws TimeoutException
      */
     public long getSpace(String path) {
-        InternalVariables.getSpaceFor = path;
-        boolean found = false;
-        RootTools.log("Looking for Space");
-        try {
-            final CommandCapture command = new CommandCapture(Constants.GS, false, "df " + path) {
-
-                @Override
-                public void output(int id, String line) {
-                    if (id == Constants.GS) {
-                        if (line.contains(InternalVariables.getSpaceFor.trim())) {
-                            InternalVariables.space = line.split(" ");
-                        }
-                    }
-                }
-            };
-            Shell.startRootShell().add(command);
-            commandWait(command);
-
-        } catch (Exception e) {}
-
-        if (InternalVariables.space != null) {
-            RootTools.log("First Method");
-
-            for (String spaceSearch : InternalVariables.space) {
-
-                RootTools.log(spaceSearch);
-
-                if (found) {
-                    return getConvertedSpace(spaceSearch);
-                } else if (spaceSearch.equals("used,")) {
-                    found = true;
-                }
-            }
-
-            // Try this way
-            int count = 0, targetCount = 3;
-
-            RootTools.log("Second Method");
-
-            if (InternalVariables.space[0].length() <= 5) {
-                targetCount = 2;
-            }
-
-            for (String spaceSearch : InternalVariables.space) {
-
-                RootTools.log(spaceSearch);
-                if (spaceSearch.length() > 0) {
-                    RootTools.log(spaceSearch + ("Valid"));
-                    if (count == targetCount) {
-                        return getConvertedSpace(spaceSearch);
-                    }
-                    count++;
-                }
-            }
+        Space space = getSpace(Collections.singleton(path)).get(path);
+        if (space != null) {
+            return space.getFree() / 1024;
         }
+
         RootTools.log("Returning -1, space could not be determined.");
         return -1;
     }
 
+    /**
+     * Measures many partitions at once, through statfs where possible and a single df as root for
+     * the rest.
+     *
+     * @param paths the paths to measure the partitions of.
+     * @return the space of every partition that could be measured, in the order the paths were given.
+     */
+    public Map<String, Space> getSpace(Collection<String> paths) {
+        return SpaceService.getSpace(paths);
+    }
+
+    /**
+     * Hashes many files, in-process where this app can read them and as root otherwise.
+     *
+     * @param paths     the files to hash.
+     * @param algorithm "MD5", "SHA-1" or "SHA-256".
+     * @return the digest of every file that could be hashed, in the order the files were given.
+     * @throws NoSuchAlgorithmException if the algorithm is not one of the above.
+     * @throws InterruptedException     if the calling thread is interrupted while waiting.
+     */
+    public Map<String, byte[]> checksum(Collection<String> paths, String algorithm)
+            throws NoSuchAlgorithmException, InterruptedException {
+        return ChecksumService.checksum(paths, algorithm);
+    }
+
     /**
      * This will return a String that represent the symlink for a specified file.
      * <p/>
@@ -1120,10 +1113,11 @@ public final class RootToolsInternalMethods {
                 String final_symlink = "";
                 if (!symlink[symlink.length - 1].equals("") && !symlink[symlink.length - 1].contains("/")) {
                     //We assume that we need to get the path for this symlink as it is probably not absolute.
-                    findBinary(symlink[symlink.length - 1]);
-                    if (RootTools.lastFoundBinaryPaths.size() > 0) {
+                    List<String> paths = findBinaries(Collections.singleton(symlink[symlink.length - 1]))
+                            .get(symlink[symlink.length - 1]);
+                    if (paths.size() > 0) {
                         //We return the first found location.
-                        final_symlink = RootTools.lastFoundBinaryPaths.get(0) + "/" + symlink[symlink.length - 1];
+                        final_symlink = paths.get(0) + "/" + symlink[symlink.length - 1];
                     } else {
                         //we couldnt find a path, return the symlink by itself.
                         final_symlink = symlink[symlink.length - 1];
@@ -1154,41 +1148,86 @@ public final class RootToolsInternalMethods {
      * @throws Exception if we cannot return the Symlinks.
      */
     public ArrayList<Symlink> getSymlinks(String path) throws Exception {
+        final ArrayList<Symlink> symlinks = new ArrayList<Symlink>();
 
-        // this command needs find
-        if (!checkUtil("find")) {
-            throw new Exception();
-        }
+        SymlinkScanner.scan(path, new StreamCallback<Symlink>() {
+            public boolean onResult(Symlink symlink) {
+                symlinks.add(symlink);
+                return true;
+            }
+        });
 
-        CommandCapture command = new CommandCapture(0, false, "dd if=/dev/zero of=/data/local/symlinks.txt bs=1024 count=1", "chmod 0777 /data/local/symlinks.txt");
-        Shell.startRootShell().add(command);
-        commandWait(command);
+        return symlinks;
+    }
 
-        command = new CommandCapture(0, false, "find " + path + " -type l -exec ls -l {} \\; > /data/local/symlinks.txt");
-        Shell.startRootShell().add(command);
-        commandWait(command);
+    /**
+     * Streams all symlinks below the given path, with their targets, to the callback.
+     *
+     * @param path     the directory to scan.
+     * @param callback receives every symlink, return false from it to stop scanning.
+     * @return the number of symlinks handed to the callback.
+     * @throws Exception if find is not available, the root shell could not be opened or part of
+     *                   the tree could not be scanned.
+     */
+    public int scanSymlinks(String path, StreamCallback<Symlink> callback) throws Exception {
+        return SymlinkScanner.scan(path, callback);
+    }
 
-        InternalVariables.symlinks = getSymLinks();
-        if (InternalVariables.symlinks != null) {
-            return InternalVariables.symlinks;
-        } else {
-            throw new Exception();
-        }
+    /**
+     * Opens a file that only root can read, its bytes are streamed through a FIFO in the cache
+     * directory of the given context.
+     *
+     * @param context used for its cache directory.
+     * @param path    the file to read.
+     * @return a stream over the contents of the file, close it when done.
+     * @throws IOException if the file cannot be read.
+     */
+    public InputStream openRead(Context context, String path) throws IOException {
+        return RootStreams.openRead(context, path);
+    }
+
+    /**
+     * Copies a file that only root can read into the cache directory of the given context and maps it.
+     *
+     * @param context used for its cache directory.
+     * @param path    the file to map.
+     * @return a read only mapping of the whole file.
+     * @throws IOException if the file cannot be read or mapped.
+     */
+    public MappedByteBuffer openMapped(Context context, String path) throws IOException {
+        return RootStreams.openMapped(context, path);
+    }
+
+    /**
+     * Opens a file that only root can write, the bytes are streamed through a FIFO in the cache
+     * directory of the given context and moved in place, with the given attributes, on close.
+     *
+     * @param context     used for its cache directory.
+     * @param path        the file to write.
+     * @param mode        the mode to give the file, like "644", null to leave it as created.
+     * @param owner       the owner to give the file, like "root.root", null to leave it as created.
+     * @param remountAsRw remounts the destination as read/write until the stream is closed.
+     * @return a stream into the file, close it to complete the write.
+     * @throws IOException if the file cannot be opened.
+     */
+    public OutputStream openWrite(Context context, String path, String mode, String owner, boolean remountAsRw)
+            throws IOException {
+        return RootStreams.openWrite(context, path, mode, owner, remountAsRw);
     }
 
     /**
      * This will return to you a string to be used in your shell commands which will represent the
      * valid working toolbox with correct permissions. For instance, if Busybox is available it will
-     * return "busybox", if busybox is not available but toolbox is then it will return "toolbox"
+     * return "busybox", if busybox is not available but toolbox is then it will return "toolbox",
+     * failing that "toybox".
      *
      * @return String that indicates the available toolbox to use for accessing applets.
      */
     public String getWorkingToolbox() {
-        if (RootTools.checkUtil("busybox")) {
-            return "busybox";
-        } else if (RootTools.checkUtil("toolbox")) {
-            return "toolbox";
-        } else {
+        try {
+            return Toolchain.getInstance().getWorkingToolbox();
+        } catch (Exception e) {
+            RootTools.log(e.getMessage());
             return "";
         }
     }
@@ -1207,11 +1246,9 @@ public final class RootToolsInternalMethods {
         if (!status.equals(Environment.MEDIA_MOUNTED)) {
             return false;
         }
-        File path = Environment.getExternalStorageDirectory();
-        StatFs stat = new StatFs(path.getPath());
-        long blockSize = stat.getBlockSize();
-        long availableBlocks = stat.getAvailableBlocks();
-        return (updateSize < availableBlocks * blockSize);
+        String path = Environment.getExternalStorageDirectory().getPath();
+        Space space = getSpace(Collections.singleton(path)).get(path);
+        return space != null && updateSize < space.getFree();
     }
 
     /**
@@ -1223,36 +1260,51 @@ public final class RootToolsInternalMethods {
      */
     public boolean hasUtil(final String util, final String box) {
 
-        InternalVariables.found = false;
+        final boolean[] found = {false};
 
         // only for busybox and toolbox
         if (!(box.endsWith("toolbox") || box.endsWith("busybox"))) {
             return false;
         }
 
+        // busybox can tell from memory, as long as it has not been replaced
+        if (box.endsWith("busybox")) {
+            boolean available = BusyBoxRegistry.get(box.substring(0, box.length() - "busybox".length())).has(util);
+            RootTools.log(available ? "Box contains " + util + " util!" : "Box does not contain " + util + " util!");
+            return available;
+        }
+
         try {
 
-            CommandCapture command = new CommandCapture(0, false, box.endsWith("toolbox") ? box + " " + util : box + " --list") {
+            CommandCapture command = new CommandCapture(0, false, box + " " + util) {
 
                 @Override
                 public void output(int id, String line) {
-                    if (box.endsWith("toolbox")) {
-                        if (!line.contains("no such tool")) {
-                            InternalVariables.found = true;
-                        }
-                    } else if (box.endsWith("busybox")) {
-                        // go through all lines of busybox --list
-                        if (line.contains(util)) {
-                            RootTools.log("Found util!");
-                            InternalVariables.found = true;
-                        }
+                    if (!line.contains("no such tool")) {
+                        found[0] = true;
+                    }
+                    // the first line decides, whatever the tool goes on to do
+                    stop();
+                }
+
+                @Override
+                public void commandError(int id, String line) {
+                    // toolbox prints both its usage and "no such tool" on stderr, the shell
+                    // reports a toolbox it cannot run there as well.
+                    if (!line.contains("no such tool") && !isShellError(line, box)) {
+                        found[0] = true;
                     }
+                    stop();
                 }
             };
+            //only what toolbox itself prints counts, see isShellError().
+            command.setCaptureStderr(true);
+            //a tool run without arguments may wait for input, as a job it reads /dev/null instead.
+            command.setStoppable(true);
             RootTools.getShell(true).add(command);
             commandWait(command);
 
-            if (InternalVariables.found) {
+            if (found[0]) {
                 RootTools.log("Box contains " + util + " util!");
                 return true;
             } else {
@@ -1265,6 +1317,21 @@ public final class RootToolsInternalMethods {
         }
     }
 
+    /**
+     * @param line a line the shell printed on stderr while running box.
+     * @param box  the box that was run.
+     * @return true if the line is the shell failing to run the box, like "sh: toolbox: not found"
+     *         or "/system/bin/sh: /system/bin/toolbox: Permission denied", rather than the box itself.
+     */
+    private static boolean isShellError(String line, String box) {
+        return line.contains("not found")
+                || line.contains("ermission denied")
+                || line.contains("can't execute")
+                || line.startsWith("sh: ")
+                || line.startsWith("/system/bin/sh: ")
+                || line.startsWith(box + ":");
+    }
+
     /**
      * This method can be used to unpack a binary from the raw resources folder and store it in
      * /data/data/app.package/files/ This is typically useful if you provide your own C- or
@@ -1289,7 +1356,11 @@ public final class RootToolsInternalMethods {
             return false;
         }
 
-        return (installer.installBinary(sourceId, destName, mode));
+        boolean installed = installer.installBinary(sourceId, destName, mode);
+        if (installed) {
+            BinaryIndex.getInstance().invalidate();
+        }
+        return installed;
     }
 
     /**
@@ -1323,17 +1394,7 @@ public final class RootToolsInternalMethods {
      * @return <code>true</code> if applet is available, false otherwise.
      */
     public boolean isAppletAvailable(String applet, String binaryPath) {
-        try {
-            for (String aplet : getBusyBoxApplets(binaryPath)) {
-                if (aplet.equals(applet)) {
-                    return true;
-                }
-            }
-            return false;
-        } catch (Exception e) {
-            RootTools.log(e.toString());
-            return false;
-        }
+        return BusyBoxRegistry.get(binaryPath).has(applet);
     }
 
     /**
@@ -1347,25 +1408,7 @@ public final class RootToolsInternalMethods {
 
         RootTools.log("Checks if process is running: " + processName);
 
-        InternalVariables.processRunning = false;
-
-        try {
-            CommandCapture command = new CommandCapture(0, false, "ps") {
-                @Override
-                public void output(int id, String line) {
-                    if (line.contains(processName)) {
-                        InternalVariables.processRunning = true;
-                    }
-                }
-            };
-            RootTools.getShell(true).add(command);
-            commandWait(command);
-
-        } catch (Exception e) {
-            RootTools.log(e.getMessage());
-        }
-
-        return InternalVariables.processRunning;
+        return !ProcessTable.getInstance().refresh().find(matching(processName)).isEmpty();
     }
 
     /**
@@ -1377,64 +1420,19 @@ public final class RootToolsInternalMethods {
     public boolean killProcess(final String processName) {
         RootTools.log("Killing process " + processName);
 
-        InternalVariables.pid_list = "";
-
-        //Assume that the process is running
-        InternalVariables.processRunning = true;
-
-        try {
-
-            CommandCapture command = new CommandCapture(0, false, "ps") {
-                @Override
-                public void output(int id, String line) {
-                    if (line.contains(processName)) {
-                        Matcher psMatcher = InternalVariables.psPattern.matcher(line);
-
-                        try {
-                            if (psMatcher.find()) {
-                                String pid = psMatcher.group(1);
-
-                                InternalVariables.pid_list += " " + pid;
-                                InternalVariables.pid_list = InternalVariables.pid_list.trim();
-
-                                RootTools.log("Found pid: " + pid);
-                            } else {
-                                RootTools.log("Matching in ps command failed!");
-                            }
-                        } catch (Exception e) {
-                            RootTools.log("Error with regex!");
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            };
-            RootTools.getShell(true).add(command);
-            commandWait(command);
-
-            // get all pids in one string, created in process method
-            String pids = InternalVariables.pid_list;
-
-            // kill processes
-            if (!pids.equals("")) {
-                try {
-                    // example: kill -9 1234 1222 5343
-                    command = new CommandCapture(0, false, "kill -9 " + pids);
-                    RootTools.getShell(true).add(command);
-                    commandWait(command);
+        // example: kill -9 1234 1222 5343, no match means it must be dead already
+        return ProcessTable.getInstance().refresh().signalAll(matching(processName), 9) >= 0;
+    }
 
-                    return true;
-                } catch (Exception e) {
-                    RootTools.log(e.getMessage());
-                }
-            } else {
-                //no pids match, must be dead
-                return true;
+    /**
+     * Matches the processes that used to show up in a ps line containing the given name.
+     */
+    private ProcessTable.Filter matching(final String processName) {
+        return new ProcessTable.Filter() {
+            public boolean accept(ProcessInfo process) {
+                return process.getCmdline().contains(processName) || process.getComm().contains(processName);
             }
-        } catch (Exception e) {
-            RootTools.log(e.getMessage());
-        }
-
-        return false;
+        };
     }
 
     /**
@@ -1495,20 +1493,10 @@ public final class RootToolsInternalMethods {
 
     private void commandWait(Command cmd) throws Exception {
 
-        while (!cmd.isFinished()) {
+        while (!cmd.waitForFinish(2000)) {
 
             RootTools.log(Constants.TAG, Shell.getOpenShell().getCommandQueuePositionString(cmd));
 
-            synchronized (cmd) {
-                try {
-                    if (!cmd.isFinished()) {
-                        cmd.wait(2000);
-                    }
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }
-
             if (!cmd.isExecuting() && !cmd.isFinished()) {
                 if (!Shell.isExecuting && !Shell.isReading) {
                     Log.e(Constants.TAG, "Waiting for a command to be executed in a shell that is not executing and not reading! \n\n Command: " + cmd.getCommand());
@@ -66,16 +66,8 @@ public class Runner extends Thread {
         }
     }
 
-    private void commandWait(Command cmd) {
-        synchronized (cmd) {
-            try {
-                if (!cmd.isFinished()) {
-                    cmd.wait(2000);
-                }
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
     }
 
 }
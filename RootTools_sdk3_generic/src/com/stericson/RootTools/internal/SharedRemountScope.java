@@ -0,0 +1,132 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.Mount;
+import com.stericson.RootTools.execution.RemountScope;
+
+/**
+ * The scopes handed out by RootTools.openRemountScope(), and used by the internal methods that write.
+ * <p/>
+ * The first scope on a mount point remounts it as rw, scopes opened on the same mount point
+ * in the meantime, by any thread, simply join it. The mount point is only put back the way
+ * it was when the last of them is closed. This way a loop that copies a hundred files to
+ * /system does not remount /system two hundred times.
+ * <p/>
+ * Always close a scope, preferably in a finally block.
+ */
+final class SharedRemountScope extends RemountScope {
+
+    private static final Map<String, Entry> active = new HashMap<String, Entry>();
+
+    private final String mountPoint;
+    private final Entry entry;
+    private boolean closed = false;
+
+    private SharedRemountScope(String mountPoint, Entry entry) {
+        this.mountPoint = mountPoint;
+        this.entry = entry;
+    }
+
+    /**
+     * Opens, or joins, a scope on the mount point that the given path lives on.
+     *
+     * @param path a path on the mount point to remount, the file does not need to exist.
+     * @return the scope, close it once you are done writing.
+     * @throws Exception if the mount table cannot be read, the path is not on any mount or the
+     *                   mount point could not be remounted as rw.
+     */
+    static RemountScope open(String path) throws Exception {
+        Mount mount = MountService.getInstance().getMountTable().findMount(path);
+        if (mount == null) {
+            throw new Exception("No mount found for " + path);
+        }
+
+        String mountPoint = mount.getMountPoint().getAbsolutePath();
+
+        synchronized (active) {
+            Entry entry = active.get(mountPoint);
+
+            if (entry == null) {
+                entry = new Entry();
+                entry.remounted = mount.isReadOnly();
+
+                if (entry.remounted) {
+                    RootTools.log("Remounting " + mountPoint + " as rw for a new scope");
+                    //nothing is registered, the next scope tries again.
+                    if (!new Remounter().remount(mountPoint, "rw")) {
+                        throw new Exception("Could not remount " + mountPoint + " as rw");
+                    }
+                }
+
+                active.put(mountPoint, entry);
+            }
+
+            entry.users++;
+            return new SharedRemountScope(mountPoint, entry);
+        }
+    }
+
+    /**
+     * @param mountPoint the absolute path of a mount point.
+     * @return true if a scope is currently open on the given mount point.
+     */
+    static boolean isHeld(String mountPoint) {
+        synchronized (active) {
+            return active.containsKey(mountPoint);
+        }
+    }
+
+    @Override
+    public String getMountPoint() {
+        return mountPoint;
+    }
+
+    @Override
+    public void close() {
+        synchronized (active) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (--entry.users == 0) {
+                active.remove(mountPoint);
+
+                if (entry.remounted) {
+                    RootTools.log("Last scope closed, remounting " + mountPoint + " as ro");
+                    new Remounter().remount(mountPoint, "ro");
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        int users = 0;
+        boolean remounted = false;
+    }
+}
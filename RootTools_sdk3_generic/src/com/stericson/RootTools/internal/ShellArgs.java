@@ -0,0 +1,82 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+final class ShellArgs {
+
+    /**
+     * How many bytes of arguments we put on a single command line. This stays well below the
+     * ARG_MAX of any Android kernel, leaving room for the environment.
+     */
+    static final int ARG_BUDGET = 32 * 1024;
+
+    private ShellArgs() {}
+
+    /**
+     * Quotes an argument so that the shell passes it on untouched, whatever characters
+     * the path or value contains.
+     *
+     * @param arg the argument to quote.
+     * @return the argument wrapped in single quotes.
+     */
+    static String quote(String arg) {
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Quotes the given arguments and joins them with spaces, starting a new line every time
+     * the next argument would push the current one over the budget.
+     *
+     * @param args   the arguments to quote and join.
+     * @param budget the maximum length of a single line, an argument longer than this gets a line of its own.
+     * @return the joined lines, each one can be appended to a command.
+     */
+    static List<String> join(Collection<String> args, int budget) {
+        List<String> lines = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+
+        for (String arg : args) {
+            String quoted = quote(arg);
+
+            if (sb.length() > 0 && sb.length() + quoted.length() + 1 > budget) {
+                lines.add(sb.toString());
+                sb.setLength(0);
+            }
+
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(quoted);
+        }
+
+        if (sb.length() > 0) {
+            lines.add(sb.toString());
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,124 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * A snapshot of the exported environment of the root shell, taken in a single round trip
+ * the first time it is needed and kept for as long as that root shell stays open.
+ */
+public final class ShellEnvironment {
+
+    private static ShellEnvironment instance = null;
+
+    private final Shell shell;
+    private final Map<String, String> variables;
+    private final Set<String> path;
+
+    private ShellEnvironment(Shell shell, Map<String, String> variables) {
+        this.shell = shell;
+        this.variables = Collections.unmodifiableMap(variables);
+
+        Set<String> path = new LinkedHashSet<String>();
+        String value = variables.get("PATH");
+        if (value != null) {
+            for (String dir : value.split(":")) {
+                if (dir.length() > 0) {
+                    path.add(dir);
+                }
+            }
+        }
+        this.path = Collections.unmodifiableSet(path);
+    }
+
+    /**
+     * @return the environment of the current root shell, taking the snapshot if this is a new shell.
+     * @throws Exception if the root shell cannot be opened.
+     */
+    public static synchronized ShellEnvironment getInstance() throws Exception {
+        Shell rootShell = Shell.startRootShell();
+
+        if (instance == null || instance.shell != rootShell) {
+            instance = new ShellEnvironment(rootShell, snapshot(rootShell));
+        }
+
+        return instance;
+    }
+
+    /**
+     * @param name the name of the variable.
+     * @return the value of the variable or <code>null</code> if it is not exported.
+     */
+    public String get(String name) {
+        return variables.get(name);
+    }
+
+    /**
+     * @return every exported variable.
+     */
+    public Map<String, String> getVariables() {
+        return variables;
+    }
+
+    /**
+     * @return the directories in $PATH, in order.
+     */
+    public Set<String> getPath() {
+        return path;
+    }
+
+    private static Map<String, String> snapshot(Shell shell) throws Exception {
+        final Map<String, String> variables = new HashMap<String, String>();
+
+        //$PATH is echoed by the shell itself in case env is nowhere to be found.
+        CommandCapture command = new CommandCapture(0, false, "echo \"PATH=$PATH\"; env 2>/dev/null") {
+            @Override
+            public void output(int id, String line) {
+                int equals = line.indexOf('=');
+                if (equals > 0) {
+                    variables.put(line.substring(0, equals), line.substring(equals + 1));
+                }
+            }
+        };
+        shell.add(command);
+        commandWait(command);
+
+        RootTools.log("Environment: " + variables);
+
+        return variables;
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
@@ -0,0 +1,403 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.Mount;
+import com.stericson.RootTools.containers.MountTable;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.FileOpBatch;
+import com.stericson.RootTools.execution.RemountScope;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * The batches handed out by RootTools.newFileOpBatch().
+ * <p/>
+ * A fused invocation is split up whenever the argument list grows too long for the kernel. If it
+ * fails, its operations are retried one by one so that every operation gets a status of its own.
+ */
+final class ShellFileOpBatch extends FileOpBatch {
+
+    private static final String TAG = "rt_op";
+
+    private static final int COPY = 0;
+    private static final int MOVE = 1;
+    private static final int CHMOD = 2;
+    private static final int CHOWN = 3;
+    private static final int DELETE = 4;
+    private static final int MKDIR = 5;
+
+    private final List<Op> ops = new ArrayList<Op>();
+    private boolean remountAsRw = true;
+    private boolean preserveFileAttributes = false;
+
+    @Override
+    public FileOpBatch copy(String source, String destination) {
+        return add(new Op(COPY, source, destination, null));
+    }
+
+    @Override
+    public FileOpBatch move(String source, String destination) {
+        return add(new Op(MOVE, source, destination, null));
+    }
+
+    @Override
+    public FileOpBatch chmod(String mode, String path) {
+        return add(new Op(CHMOD, null, path, mode));
+    }
+
+    @Override
+    public FileOpBatch chown(String owner, String path) {
+        return add(new Op(CHOWN, null, path, owner));
+    }
+
+    @Override
+    public FileOpBatch delete(String path) {
+        return add(new Op(DELETE, null, path, null));
+    }
+
+    @Override
+    public FileOpBatch mkdir(String path) {
+        return add(new Op(MKDIR, null, path, null));
+    }
+
+    @Override
+    public FileOpBatch setRemountAsRw(boolean remountAsRw) {
+        this.remountAsRw = remountAsRw;
+        return this;
+    }
+
+    @Override
+    public FileOpBatch setPreserveFileAttributes(boolean preserveFileAttributes) {
+        this.preserveFileAttributes = preserveFileAttributes;
+        return this;
+    }
+
+    @Override
+    public int size() {
+        return ops.size();
+    }
+
+    @Override
+    public int[] execute() {
+        final int[] status = new int[ops.size()];
+        Arrays.fill(status, -1);
+
+        if (ops.isEmpty()) {
+            return status;
+        }
+
+        List<RemountScope> scopes = new ArrayList<RemountScope>();
+        List<Command> queued = new ArrayList<Command>();
+
+        try {
+            if (remountAsRw) {
+                //one scope per mount point, not per operation.
+                MountTable table = MountService.getInstance().getMountTable();
+                Set<String> mountPoints = new LinkedHashSet<String>();
+
+                for (Op op : ops) {
+                    addMountPoint(mountPoints, table, op.target);
+                    //a move unlinks its source, that needs write access as well.
+                    if (op.kind == MOVE) {
+                        addMountPoint(mountPoints, table, op.source);
+                    }
+                }
+
+                for (String mountPoint : mountPoints) {
+                    scopes.add(SharedRemountScope.open(mountPoint));
+                }
+            }
+
+            Toolchain toolchain = Toolchain.getInstance();
+            Shell shell = Shell.startRootShell();
+            List<Command> commands = new ArrayList<Command>();
+
+            for (List<String> script : buildScripts(toolchain)) {
+                //give every step as long as a single copyFile() would get.
+                Command command = new CommandCapture(0,
+                        RootTools.default_Command_Timeout * script.size(),
+                        script.toArray(new String[script.size()])) {
+
+                    @Override
+                    public void output(int id, String line) {
+                        if (line.startsWith(TAG + " ")) {
+                            String[] fields = line.split(" ");
+
+                            try {
+                                int code = Integer.parseInt(fields[1]);
+                                int first = Integer.parseInt(fields[2]);
+                                int last = fields.length > 3 ? Integer.parseInt(fields[3]) : first;
+
+                                for (int i = first; i <= last; i++) {
+                                    status[i] = code;
+                                }
+                            } catch (Exception e) {
+                                RootTools.log("Unexpected batch output: " + line);
+                            }
+                        } else {
+                            super.output(id, line);
+                        }
+                    }
+                };
+                //so that an interrupted batch can kill its scripts instead of leaving them running.
+                command.setStoppable(true);
+                commands.add(command);
+            }
+
+            //queue everything before waiting, the shell works through it back to back.
+            for (Command command : commands) {
+                shell.add(command);
+                queued.add(command);
+            }
+
+            for (Command command : commands) {
+                commandWait(command);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            RootTools.log("Interrupted while running a batch of file operations");
+        } catch (Exception e) {
+            RootTools.log("Failed to run a batch of file operations: " + e.getMessage());
+        } finally {
+            //the scripts must be done before the mount points they write to go back to ro.
+            settle(queued);
+            for (RemountScope scope : scopes) {
+                scope.close();
+            }
+        }
+
+        return status;
+    }
+
+    private static void addMountPoint(Set<String> mountPoints, MountTable table, String path) {
+        Mount mount = table.findMount(path);
+        if (mount != null) {
+            mountPoints.add(mount.getMountPoint().getAbsolutePath());
+        }
+    }
+
+    private FileOpBatch add(Op op) {
+        ops.add(op);
+        return this;
+    }
+
+    /**
+     * Turns the operations into shell scripts of at most ARG_BUDGET bytes each.
+     * Every line of a script is one step that reports its status.
+     */
+    private List<List<String>> buildScripts(Toolchain toolchain) {
+        List<List<String>> scripts = new ArrayList<List<String>>();
+        List<String> script = new ArrayList<String>();
+        int length = 0;
+
+        int i = 0;
+        while (i < ops.size()) {
+            Op op = ops.get(i);
+            String step;
+
+            if (op.kind == COPY || op.kind == MOVE) {
+                step = single(transfer(toolchain, op), i);
+                i++;
+            } else {
+                //gather the run of operations that can share one invocation.
+                int end = i + 1;
+                while (end < ops.size() && ops.get(end).fusesWith(op)) {
+                    end++;
+                }
+
+                String invocation = invocation(toolchain, op);
+                int budget = ShellArgs.ARG_BUDGET - invocation.length();
+                StringBuilder sb = new StringBuilder();
+                List<String> quoted = new ArrayList<String>();
+                int first = i;
+                int size = 0;
+
+                for (int j = i; j <= end; j++) {
+                    String arg = j < end ? ShellArgs.quote(ops.get(j).target) : null;
+
+                    //flush when the arguments are complete or the next one would not fit.
+                    if (!quoted.isEmpty() && (arg == null || size + arg.length() + 1 > budget)) {
+                        if (sb.length() > 0) {
+                            sb.append('\n');
+                        }
+                        sb.append(fused(invocation, quoted, first));
+                        first += quoted.size();
+                        quoted.clear();
+                        size = 0;
+                    }
+
+                    if (arg != null) {
+                        quoted.add(arg);
+                        size += arg.length() + 1;
+                    }
+                }
+
+                step = sb.toString();
+                i = end;
+            }
+
+            if (!script.isEmpty() && length + step.length() > ShellArgs.ARG_BUDGET) {
+                scripts.add(script);
+                script = new ArrayList<String>();
+                length = 0;
+            }
+
+            script.add(step);
+            length += step.length() + 1;
+        }
+
+        if (!script.isEmpty()) {
+            scripts.add(script);
+        }
+
+        return scripts;
+    }
+
+    private String transfer(Toolchain toolchain, Op op) {
+        String source = ShellArgs.quote(op.source);
+        String destination = ShellArgs.quote(op.target);
+        String cp = toolchain.resolve("cp");
+
+        if (op.kind == MOVE && toolchain.resolve("mv") != null) {
+            return toolchain.resolve("mv") + " -f " + source + " " + destination;
+        }
+
+        String copy;
+        if (cp != null) {
+            copy = cp + (preserveFileAttributes ? " -fp " : " -f ") + source + " " + destination;
+        } else {
+            copy = tool(toolchain, "cat") + " " + source + " > " + destination;
+        }
+
+        if (op.kind == MOVE) {
+            return copy + " && " + tool(toolchain, "rm") + " -f " + source;
+        }
+
+        return copy;
+    }
+
+    private String invocation(Toolchain toolchain, Op op) {
+        switch (op.kind) {
+            case CHMOD:
+                return tool(toolchain, "chmod") + " " + ShellArgs.quote(op.argument);
+            case CHOWN:
+                return tool(toolchain, "chown") + " " + ShellArgs.quote(op.argument);
+            case MKDIR:
+                return tool(toolchain, "mkdir") + " -p";
+            default:
+                return tool(toolchain, "rm") + " -rf";
+        }
+    }
+
+    private static String tool(Toolchain toolchain, String util) {
+        String resolved = toolchain.resolve(util);
+        return resolved != null ? resolved : util;
+    }
+
+    private static String single(String invocation, int index) {
+        return invocation + "; echo \"" + TAG + " $? " + index + "\"";
+    }
+
+    /**
+     * Runs the invocation on all arguments at once, and on each argument on its own if that fails.
+     */
+    private static String fused(String invocation, List<String> quoted, int first) {
+        if (quoted.size() == 1) {
+            return single(invocation + " " + quoted.get(0), first);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("if ").append(invocation);
+        for (String arg : quoted) {
+            sb.append(' ').append(arg);
+        }
+        sb.append("; then echo \"").append(TAG).append(" 0 ").append(first).append(' ')
+                .append(first + quoted.size() - 1).append("\"; else");
+
+        for (int i = 0; i < quoted.size(); i++) {
+            sb.append(' ').append(single(invocation + " " + quoted.get(i), first + i)).append(';');
+        }
+
+        return sb.append(" fi").toString();
+    }
+
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+
+    /**
+     * Stops the commands that are not done yet and waits for them, even when interrupted.
+     * The interrupt status is kept for the caller.
+     */
+    private static void settle(List<Command> commands) {
+        boolean interrupted = Thread.interrupted();
+
+        for (Command command : commands) {
+            if (!command.isFinished()) {
+                command.stop();
+            }
+        }
+
+        for (Command command : commands) {
+            while (!command.isFinished()) {
+                try {
+                    command.waitForFinish();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Op {
+        final int kind;
+        final String source;
+        final String target;
+        final String argument;
+
+        Op(int kind, String source, String target, String argument) {
+            this.kind = kind;
+            this.source = source;
+            this.target = target;
+            this.argument = argument;
+        }
+
+        boolean fusesWith(Op other) {
+            return kind == other.kind
+                    && (argument == null ? other.argument == null : argument.equals(other.argument));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.os.StatFs;
+import android.os.SystemClock;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.Space;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * Measures partitions, through statfs where this app is allowed to and through a single df as root
+ * for everything else. Measurements are reused for a second, so watchers and callers polling the
+ * same partitions do not measure them twice.
+ */
+final class SpaceService {
+
+    private static final String SECTION = "rt_df ";
+    private static final long MAX_AGE = 1000;
+
+    private static final Map<String, Space> cache = new HashMap<String, Space>();
+
+    private SpaceService() {}
+
+    /**
+     * @param paths the paths to measure the partitions of.
+     * @return the space of every partition that could be measured, in the order the paths were given.
+     */
+    static Map<String, Space> getSpace(Collection<String> paths) {
+        Map<String, Space> result = new LinkedHashMap<String, Space>();
+        List<String> unknown = new ArrayList<String>();
+        long now = SystemClock.elapsedRealtime();
+
+        for (String path : paths) {
+            Space space;
+
+            synchronized (cache) {
+                space = cache.get(path);
+            }
+
+            if (space == null || now - space.getTime() > MAX_AGE) {
+                space = statFs(path, now);
+            }
+
+            result.put(path, space);
+            if (space == null) {
+                unknown.add(path);
+            }
+        }
+
+        if (!unknown.isEmpty()) {
+            //one command with a section per path, df does not tell us which argument a line is for.
+            String[] lines = new String[unknown.size()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = "echo " + SECTION + i + "; df " + ShellArgs.quote(unknown.get(i)) + " 2>/dev/null";
+            }
+
+            final Map<String, StringBuilder> output = new HashMap<String, StringBuilder>();
+            boolean complete = false;
+
+            try {
+                CommandCapture command = new CommandCapture(0, false, lines) {
+
+                    private StringBuilder section = null;
+
+                    @Override
+                    public void output(int id, String line) {
+                        if (line.startsWith(SECTION)) {
+                            section = new StringBuilder();
+                            output.put(line.substring(SECTION.length()).trim(), section);
+                        } else if (section != null) {
+                            section.append(line).append('\n');
+                        }
+                    }
+                };
+                Shell.startRootShell().add(command);
+                commandWait(command);
+                complete = true;
+            } catch (InterruptedException e) {
+                //df may still be writing, nothing it said so far can be trusted or cached.
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                RootTools.log(e.getMessage());
+            }
+
+            now = SystemClock.elapsedRealtime();
+            for (int i = 0; i < unknown.size(); i++) {
+                String path = unknown.get(i);
+                StringBuilder df = complete ? output.get(String.valueOf(i)) : null;
+                result.put(path, df != null ? parseDf(path, df.toString(), now) : null);
+            }
+        }
+
+        //leave out what could not be measured.
+        Map<String, Space> measured = new LinkedHashMap<String, Space>();
+
+        synchronized (cache) {
+            for (Space space : result.values()) {
+                if (space != null) {
+                    cache.put(space.getPath(), space);
+                    measured.put(space.getPath(), space);
+                }
+            }
+        }
+
+        return measured;
+    }
+
+    private static Space statFs(String path, long now) {
+        try {
+            StatFs stat = new StatFs(path);
+            long blockSize = stat.getBlockSize();
+            long total = blockSize * stat.getBlockCount();
+
+            return new Space(path, total, total - blockSize * stat.getFreeBlocks(),
+                    blockSize * stat.getAvailableBlocks(), now);
+        } catch (Exception e) {
+            //not allowed to, or not there at all.
+            return null;
+        }
+    }
+
+    /**
+     * Understands the three flavours of df found on Android:
+     * <pre>
+     * /system: 516096K total, 457228K used, 58868K available (block size 4096)
+     * /system   1.5G   1.2G   300.0M   4096
+     * /dev/block/mmcblk0p9   1548144   1292536   255608   83% /system
+     * </pre>
+     * The last one is busybox and toybox, which always report 1K blocks. The first line of the
+     * last two is a header, and busybox puts a long device name on a line of its own.
+     */
+    private static Space parseDf(String path, String df, long now) {
+        String[] lines = df.split("\n");
+
+        if (lines.length == 1 && lines[0].contains(" total, ")) {
+            String[] fields = lines[0].substring(lines[0].indexOf(':') + 1).trim().split("[ ,]+");
+            if (fields.length >= 5) {
+                return space(path, fields[0], fields[2], fields[4], now);
+            }
+            return null;
+        }
+
+        StringBuilder data = new StringBuilder();
+        for (int i = 1; i < lines.length; i++) {
+            data.append(lines[i]).append(' ');
+        }
+
+        String[] fields = data.toString().trim().split("\\s+");
+        if (fields.length >= 4) {
+            return space(path, fields[1], fields[2], fields[3], now);
+        }
+
+        return null;
+    }
+
+    private static Space space(String path, String total, String used, String free, long now) {
+        long totalKb = kilobytes(total);
+        long usedKb = kilobytes(used);
+        long freeKb = kilobytes(free);
+
+        if (totalKb < 0 || usedKb < 0 || freeKb < 0) {
+            return null;
+        }
+
+        return new Space(path, totalKb * 1024, usedKb * 1024, freeKb * 1024, now);
+    }
+
+    /**
+     * @param spaceStr a size as printed by df, like 1024, 1024K, 1.5M or 2G.
+     * @return the size in kilobytes, or -1 if it is not a size.
+     */
+    static long kilobytes(String spaceStr) {
+        try {
+            double multiplier = 1.0;
+            char c;
+            StringBuffer sb = new StringBuffer();
+            for (int i = 0; i < spaceStr.length(); i++) {
+                c = spaceStr.charAt(i);
+                if (!Character.isDigit(c) && c != '.') {
+                    if (c == 'm' || c == 'M') {
+                        multiplier = 1024.0;
+                    } else if (c == 'g' || c == 'G') {
+                        multiplier = 1024.0 * 1024.0;
+                    }
+                    break;
+                }
+                sb.append(spaceStr.charAt(i));
+            }
+            return (long) Math.ceil(Double.valueOf(sb.toString()) * multiplier);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
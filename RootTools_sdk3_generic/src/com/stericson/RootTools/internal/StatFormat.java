@@ -0,0 +1,139 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * Builds stat invocations with a fixed format and turns their output into FileStats.
+ * <p/>
+ * Every line is: raw mode in hex, uid, gid, size, mtime, inode, optionally the SELinux context,
+ * and the quoted name with " -> target" for symlinks. All fields but the last are free of spaces.
+ */
+final class StatFormat {
+
+    private static final String WITH_CONTEXT = "%f %u %g %s %Y %i %C %N";
+    private static final String WITHOUT_CONTEXT = "%f %u %g %s %Y %i %N";
+
+    //the toolchain the context support was probed with.
+    private static Toolchain probedWith = null;
+    private static boolean context = false;
+
+    private final String stat;
+    private final boolean withContext;
+
+    private StatFormat(String stat, boolean withContext) {
+        this.stat = stat;
+        this.withContext = withContext;
+    }
+
+    /**
+     * @return the stat format for the current root shell, or null if there is no stat to be found.
+     * @throws Exception if the toolchain cannot be probed.
+     */
+    static synchronized StatFormat getInstance() throws Exception {
+        Toolchain toolchain = Toolchain.getInstance();
+        String stat = toolchain.resolve("stat");
+
+        if (stat == null) {
+            return null;
+        }
+
+        if (probedWith != toolchain) {
+            //not every stat knows %C, the ones without SELinux support print a '?' or fail.
+            final StringBuilder sb = new StringBuilder();
+            CommandCapture command = new CommandCapture(0, false, stat + " -c %C / 2>/dev/null") {
+                @Override
+                public void output(int id, String line) {
+                    sb.append(line.trim());
+                }
+            };
+            Shell.startRootShell().add(command);
+            commandWait(command);
+
+            context = command.getExitCode() == 0 && sb.length() > 0 && !sb.toString().equals("?");
+            probedWith = toolchain;
+            RootTools.log("stat reports SELinux contexts: " + context);
+        }
+
+        return new StatFormat(stat, context);
+    }
+
+    /**
+     * @return the stat invocation, without any files. Missing files are left out of the output.
+     */
+    String command() {
+        return stat + " -c '" + (withContext ? WITH_CONTEXT : WITHOUT_CONTEXT) + "'";
+    }
+
+    /**
+     * @param line a line of output of {@link #command()}.
+     * @return the parsed line, or null if it is not a stat line.
+     */
+    FileStat parse(String line) {
+        String[] fields = line.split(" ", withContext ? 8 : 7);
+        if (fields.length < (withContext ? 8 : 7)) {
+            return null;
+        }
+
+        try {
+            int mode = Integer.parseInt(fields[0], 16);
+            int uid = Integer.parseInt(fields[1]);
+            int gid = Integer.parseInt(fields[2]);
+            long size = Long.parseLong(fields[3]);
+            long lastModified = Long.parseLong(fields[4]) * 1000L;
+            long inode = Long.parseLong(fields[5]);
+            String context = withContext && !fields[6].equals("?") ? fields[6] : null;
+            String name = fields[withContext ? 7 : 6];
+            String target = null;
+
+            if ((mode & 0170000) == 0120000) {
+                //busybox quotes both sides, toybox quotes neither.
+                int arrow = name.indexOf(name.startsWith("'") ? "' -> '" : " -> ");
+                if (arrow >= 0) {
+                    target = unquote(name.substring(arrow + (name.startsWith("'") ? 5 : 4)));
+                    name = name.substring(0, name.startsWith("'") ? arrow + 1 : arrow);
+                }
+            }
+
+            return new FileStat(unquote(name), mode, uid, gid, size, lastModified, inode, context, target);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("'") && value.endsWith("'")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
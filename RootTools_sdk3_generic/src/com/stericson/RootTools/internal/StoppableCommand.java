@@ -0,0 +1,53 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import com.stericson.RootTools.execution.CommandCapture;
+
+/**
+ * A stoppable command for the internal methods, which only need its output line by line.
+ * <p/>
+ * Stopping kills the command through another root shell, so run it on a pooled shell, a shell
+ * of its own or the shared root shell, see Command.stop(). Output that arrives after stop() is dropped.
+ */
+abstract class StoppableCommand extends CommandCapture {
+
+    /**
+     * @param timeout the timeout in milliseconds, 0 to wait for as long as it takes.
+     * @param command a single command or pipeline, it may not end with a newline or &amp;.
+     */
+    StoppableCommand(int timeout, String command) {
+        super(0, timeout, command);
+        setStoppable(true);
+    }
+
+    /**
+     * Called for every line of output, until the command is stopped.
+     */
+    abstract void line(String line);
+
+    @Override
+    public void output(int id, String line) {
+        line(line);
+    }
+}
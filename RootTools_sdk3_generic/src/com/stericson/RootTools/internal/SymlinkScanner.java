@@ -0,0 +1,241 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.DirEntry;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.containers.Symlink;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.Shell;
+import com.stericson.RootTools.execution.ShellPool;
+import com.stericson.RootTools.execution.StreamCallback;
+
+/**
+ * Finds all symlinks below a directory and streams them, with their targets, to a callback.
+ * <p/>
+ * The directory itself is listed first, every subdirectory is then scanned by a find of its own,
+ * spread over the pooled root shells. find hands the links it finds to stat in batches, so there
+ * is no fork per link and nothing is written to disk. The callback is never called concurrently.
+ */
+final class SymlinkScanner {
+
+    private final StreamCallback<Symlink> callback;
+    private final LinkedList<String> pending = new LinkedList<String>();
+    private final List<StoppableCommand> running = new ArrayList<StoppableCommand>();
+
+    private StatFormat format;
+    private String find;
+    private boolean stopped = false;
+    private Exception failure = null;
+    private int count = 0;
+
+    private SymlinkScanner(StreamCallback<Symlink> callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * @param path     the directory to scan.
+     * @param callback receives every symlink, return false from it to stop scanning.
+     * @return the number of symlinks handed to the callback.
+     * @throws Exception if find is not available, the root shell could not be opened or part of
+     *                   the tree could not be scanned.
+     */
+    static int scan(String path, StreamCallback<Symlink> callback) throws Exception {
+        return new SymlinkScanner(callback).run(path);
+    }
+
+    private int run(String path) throws Exception {
+        final String root = path.length() > 1 && path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+
+        find = Toolchain.getInstance().resolve("find");
+        format = StatFormat.getInstance();
+
+        if (find == null) {
+            throw new Exception("find is needed to scan " + path + " for symlinks");
+        }
+
+        if (format == null) {
+            //without stat we cannot split the tree up, let ls -l describe the links instead.
+            scanSubtree(root);
+            return count;
+        }
+
+        //the links right below root are found while looking for subtrees to hand out.
+        RootTools.list(root, 1, null, 0, new StreamCallback<DirEntry>() {
+            public boolean onResult(DirEntry entry) {
+                if (entry.isDirectory()) {
+                    pending.add(entry.getPath());
+                } else if (entry.isSymlink()) {
+                    deliver(entry);
+                }
+                return !isStopped();
+            }
+        });
+
+        List<Thread> workers = new ArrayList<Thread>();
+        for (int i = 0; i < Math.min(ShellPool.MAX_SHELLS, pending.size()); i++) {
+            Thread worker = new Thread(new Runnable() {
+                public void run() {
+                    String subtree;
+                    while ((subtree = next()) != null) {
+                        try {
+                            scanSubtree(subtree);
+                        } catch (Exception e) {
+                            RootTools.log("Could not scan " + subtree + ": " + e.getMessage());
+                            fail(e);
+                        }
+                    }
+                }
+            }, "Symlink Scanner");
+            worker.start();
+            workers.add(worker);
+        }
+
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+            throw e;
+        }
+
+        synchronized (this) {
+            //a partial result would look like a complete one.
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Keeps the first failure and stops the rest of the scan, it can no longer be complete.
+     */
+    private synchronized void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+        halt();
+    }
+
+    private synchronized void halt() {
+        stopped = true;
+        for (StoppableCommand command : running) {
+            command.stop();
+        }
+    }
+
+    private synchronized String next() {
+        return stopped || pending.isEmpty() ? null : pending.removeFirst();
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    private void scanSubtree(final String subtree) throws Exception {
+        String stat = format != null ? format.command() : "ls -l";
+
+        StoppableCommand command = new StoppableCommand(0,
+                find + " " + ShellArgs.quote(subtree) + " -type l -exec " + stat + " {} + 2>/dev/null") {
+            @Override
+            void line(String line) {
+                if (format != null) {
+                    FileStat fileStat = format.parse(line);
+                    if (fileStat != null) {
+                        deliver(fileStat);
+                    }
+                } else {
+                    int arrow = line.indexOf(" -> ");
+                    if (arrow > 0) {
+                        deliver(new Symlink(new File(linkName(line.substring(0, arrow), subtree)),
+                                new File(line.substring(arrow + 4))));
+                    }
+                }
+            }
+        };
+
+        synchronized (this) {
+            if (stopped) {
+                return;
+            }
+            running.add(command);
+        }
+
+        Shell shell = ShellPool.acquire();
+        try {
+            shell.add(command);
+            commandWait(command);
+        } finally {
+            ShellPool.release(shell);
+
+            synchronized (this) {
+                running.remove(command);
+            }
+        }
+    }
+
+    /**
+     * @param head    an ls -l line up to the " -> ".
+     * @param subtree the directory find was started in, every name it hands to ls starts with it.
+     * @return the name of the link, spaces included.
+     */
+    private static String linkName(String head, String subtree) {
+        int start = head.indexOf(" " + subtree);
+        if (start >= 0) {
+            return head.substring(start + 1);
+        }
+
+        String[] fields = head.split(" ");
+        return fields[fields.length - 1];
+    }
+
+    private void deliver(FileStat fileStat) {
+        if (fileStat.getSymlinkTarget() != null) {
+            deliver(new Symlink(new File(fileStat.getPath()), new File(fileStat.getSymlinkTarget())));
+        }
+    }
+
+    private synchronized void deliver(Symlink symlink) {
+        if (stopped) {
+            return;
+        }
+
+        count++;
+        if (!callback.onResult(symlink)) {
+            halt();
+        }
+    }
+
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
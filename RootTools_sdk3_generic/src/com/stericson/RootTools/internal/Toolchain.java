@@ -0,0 +1,247 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootTools.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.execution.Command;
+import com.stericson.RootTools.execution.CommandCapture;
+import com.stericson.RootTools.execution.Shell;
+
+/**
+ * Knows which of the bare applets, busybox, toybox and toolbox provide the utilities
+ * RootTools relies on.
+ * <p/>
+ * Everything is probed with a single command the first time it is needed and the result
+ * is kept for as long as the root shell it was probed on stays open, so the facade methods
+ * can dispatch straight to a working variant instead of running checkUtil and hasUtil
+ * on every call.
+ */
+public final class Toolchain {
+
+    /**
+     * The boxes we know how to use, in order of preference.
+     */
+    static final String[] BOXES = {"busybox", "toybox", "toolbox"};
+
+    /**
+     * The utilities we probe for.
+     */
+    static final String[] UTILS = {"cat", "chmod", "chown", "cp", "dd", "df", "find", "inotifyd", "kill", "ln",
+            "ls", "md5sum", "mkdir", "mkfifo", "mount", "mv", "readlink", "rm", "sha1sum", "sha256sum", "stat"};
+
+    private static final String BARE_SECTION = "@bare";
+    private static final String BUSYBOX_SECTION = "@busybox";
+    private static final String TOYBOX_SECTION = "@toybox";
+    private static final String TOOLBOX_SECTION = "@toolbox";
+
+    private static Toolchain instance = null;
+
+    private final Shell shell;
+
+    //util -> directory in $PATH, boxes included
+    private final Map<String, String> bare = new HashMap<String, String>();
+    //box -> applets
+    private final Map<String, Set<String>> applets = new HashMap<String, Set<String>>();
+    //util -> the command to use, "" when nothing provides it
+    private final Map<String, String> resolved = new HashMap<String, String>();
+
+    private Toolchain(Shell shell) {
+        this.shell = shell;
+
+        for (String box : BOXES) {
+            applets.put(box, new HashSet<String>());
+        }
+    }
+
+    /**
+     * @return the toolchain of the current root shell, probing it if this is a new shell.
+     * @throws Exception if the root shell cannot be opened or the probe fails.
+     */
+    public static synchronized Toolchain getInstance() throws Exception {
+        Shell rootShell = Shell.startRootShell();
+
+        if (instance == null || instance.shell != rootShell) {
+            Toolchain toolchain = new Toolchain(rootShell);
+            toolchain.probe();
+            instance = toolchain;
+        }
+
+        return instance;
+    }
+
+    /**
+     * Drops what we know, the next call to getInstance() probes again.
+     * Use this after installing or removing a box.
+     */
+    public static synchronized void invalidate() {
+        instance = null;
+    }
+
+    /**
+     * @param util the utility to look for.
+     * @return the command that runs the utility, for instance "cp" or "busybox cp",
+     *         or <code>null</code> if nothing provides it.
+     */
+    public synchronized String resolve(String util) {
+        String command = resolved.get(util);
+
+        if (command == null) {
+            command = "";
+
+            if (bare.containsKey(util)) {
+                command = util;
+            } else {
+                for (String box : BOXES) {
+                    if (provides(box, util)) {
+                        command = box + " " + util;
+                        break;
+                    }
+                }
+            }
+
+            resolved.put(util, command);
+            RootTools.log(util + " resolves to \"" + command + "\"");
+        }
+
+        return command.length() > 0 ? command : null;
+    }
+
+    /**
+     * @param util the utility to look for.
+     * @return true if any variant of the utility is available.
+     */
+    public boolean has(String util) {
+        return resolve(util) != null;
+    }
+
+    /**
+     * @param box "busybox", "toybox" or "toolbox"
+     * @return true if the box is installed in $PATH.
+     */
+    public boolean hasBox(String box) {
+        return bare.containsKey(box);
+    }
+
+    /**
+     * @param box  "busybox", "toybox" or "toolbox"
+     * @param util the utility to look for.
+     * @return true if the box is installed and provides the utility.
+     */
+    public boolean provides(String box, String util) {
+        Set<String> boxApplets = applets.get(box);
+        return hasBox(box) && boxApplets != null && boxApplets.contains(util);
+    }
+
+    /**
+     * @param util the utility, or box, to look for.
+     * @return the directory in $PATH that holds the utility, or <code>null</code> if it is not there.
+     */
+    public String getPath(String util) {
+        return bare.get(util);
+    }
+
+    /**
+     * @return "busybox", "toolbox" or "toybox", whichever is installed first in that order,
+     *         or "" if none of them is.
+     */
+    public String getWorkingToolbox() {
+        if (hasBox("busybox")) {
+            return "busybox";
+        } else if (hasBox("toolbox")) {
+            return "toolbox";
+        } else if (hasBox("toybox")) {
+            return "toybox";
+        } else {
+            return "";
+        }
+    }
+
+    private void probe() throws Exception {
+        StringBuilder names = new StringBuilder();
+        for (String util : UTILS) {
+            names.append(' ').append(util);
+        }
+        for (String box : BOXES) {
+            names.append(' ').append(box);
+        }
+
+        //Walk $PATH with builtins only, then ask each box what it provides.
+        //toolbox cannot list its tools, but they are all symlinked from /system/bin.
+        CommandCapture command = new CommandCapture(0, false,
+                "echo " + BARE_SECTION
+                        + "; rt_o=\"$IFS\"; IFS=:; for rt_d in $PATH; do IFS=\"$rt_o\"; for rt_u in" + names
+                        + "; do [ -x \"$rt_d/$rt_u\" ] && echo \"$rt_u $rt_d\"; done; done; IFS=\"$rt_o\"",
+                "echo " + BUSYBOX_SECTION + "; busybox --list 2>/dev/null",
+                "echo " + TOYBOX_SECTION + "; toybox 2>/dev/null",
+                "echo " + TOOLBOX_SECTION + "; [ -x /system/bin/toolbox ] && ls -l /system/bin 2>/dev/null") {
+
+            private String section = "";
+
+            @Override
+            public void output(int id, String line) {
+                line = line.trim();
+
+                if (line.startsWith("@")) {
+                    section = line;
+                } else if (line.length() > 0) {
+                    if (BARE_SECTION.equals(section)) {
+                        int space = line.indexOf(' ');
+                        if (space > 0 && !bare.containsKey(line.substring(0, space))) {
+                            //the first directory in $PATH wins, as it would in the shell.
+                            bare.put(line.substring(0, space), line.substring(space + 1));
+                        }
+                    } else if (BUSYBOX_SECTION.equals(section)) {
+                        applets.get("busybox").add(line);
+                    } else if (TOYBOX_SECTION.equals(section)) {
+                        for (String applet : line.split("\\s+")) {
+                            applets.get("toybox").add(applet);
+                        }
+                    } else if (TOOLBOX_SECTION.equals(section)) {
+                        if (line.endsWith("-> toolbox")) {
+                            String[] fields = line.split("\\s+");
+                            if (fields.length >= 3) {
+                                applets.get("toolbox").add(fields[fields.length - 3]);
+                            }
+                        }
+                    }
+                }
+            }
+        };
+        shell.add(command);
+        commandWait(command);
+
+        if (bare.isEmpty()) {
+            //even ls could not be found, the shell probably died on us.
+            throw new Exception("Could not probe the toolchain");
+        }
+    }
+
+    private void commandWait(Command cmd) throws InterruptedException {
+        cmd.waitForFinish();
+    }
+}
@@ -0,0 +1,249 @@
+/* 
+ * This file is part of the RootTools Project: http://code.google.com/p/roottools/
+ *  
+ * Copyright (c) 2012 Stephen Erickson, Chris Ravenscroft, Dominik Schuermann, Adam Shanks
+ *  
+ * This code is dual-licensed under the terms of the Apache License Version 2.0 and
+ * the terms of the General Public License (GPL) Version 2.
+ * You may use this code according to either of these licenses as is most appropriate
+ * for your project on a case-by-case basis.
+ * 
+ * The terms of each license can be found in the root directory of this project's repository as well as at:
+ * 
+ * * http://www.apache.org/licenses/LICENSE-2.0
+ * * http://www.gnu.org/licenses/gpl-2.0.txt
+ *  
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under these Licenses is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See each License for the specific language governing permissions and
+ * limitations under that License.
+ */
+
+package com.stericson.RootToolsTests;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.stericson.RootTools.containers.FileEvent;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.containers.Mount;
+import com.stericson.RootTools.containers.MountTable;
+import com.stericson.RootTools.containers.Space;
+
+/**
+ * Feeds samples of shell output to the parsers of RootTools, without root or a shell. The
+ * parsers are package-private, so they are reached by reflection rather than made public.
+ */
+final class ParserChecks {
+
+    private static final String INTERNAL = "com.stericson.RootTools.internal.";
+
+    private final List<String> failures = new ArrayList<String>();
+
+    private ParserChecks() {}
+
+    /**
+     * @return a line for every sample that was not understood as expected, empty if all were.
+     */
+    static List<String> run() {
+        ParserChecks checks = new ParserChecks();
+
+        checks.checkJoin();
+        checks.checkMountTable();
+        checks.checkStat();
+        checks.checkDf();
+        checks.checkFileEvent();
+
+        return checks.failures;
+    }
+
+    private void checkJoin() {
+        expect("joined arguments", Arrays.asList("'a' 'b c'", "'it'\\''s'"), join(Arrays.asList("a", "b c", "it's"), 12));
+        expect("argument over the budget", Arrays.asList("'a'", "'abcdefghij'", "'b'"),
+                join(Arrays.asList("a", "abcdefghij", "b"), 5));
+        expect("no arguments", new ArrayList<String>(), join(new ArrayList<String>(), 12));
+    }
+
+    private Object join(Collection<String> args, int budget) {
+        return call("ShellArgs", "join", new Class<?>[]{Collection.class, int.class}, args, budget);
+    }
+
+    private void checkMountTable() {
+        MountTable table = new MountTable(Arrays.asList(
+                new Mount(new File("rootfs"), new File("/"), "rootfs", "ro,relatime"),
+                new Mount(new File("/dev/block/system"), new File("/system"), "ext4", "ro,seclabel"),
+                new Mount(new File("/dev/block/userdata"), new File("/data"), "ext4", "rw,nosuid,nodev"),
+                new Mount(new File("/dev/fuse"), new File("/data/media"), "fuse", "rw,nosuid,nodev")));
+
+        checkMount(table, "/system/bin/sh", "/system");
+        checkMount(table, "/system", "/system");
+        checkMount(table, "/systemx/file", "/");
+        checkMount(table, "/data/media/0/file", "/data/media");
+        checkMount(table, "/data/local/tmp", "/data");
+
+        Mount system = table.findMount("/system");
+        if (system != null) {
+            expect("read only flag", true, system.isReadOnly());
+            expect("flags", true, system.getFlags().contains("seclabel"));
+        }
+    }
+
+    private void checkMount(MountTable table, String path, String mountPoint) {
+        Mount mount = table.findMount(path);
+        expect("mount of " + path, mountPoint, mount != null ? mount.getMountPoint().getPath() : null);
+    }
+
+    private void checkStat() {
+        //busybox quotes %N on both sides of the arrow, toybox quotes neither.
+        Object busybox = statFormat(true);
+        Object toybox = statFormat(false);
+        if (busybox == null || toybox == null) {
+            return;
+        }
+
+        FileStat stat = parseStat(busybox, "a1ff 0 2000 8 1230768000 1234 u:object_r:system_file:s0 "
+                + "'/system/bin/sh' -> '/system/bin/mksh'");
+        if (expect("busybox stat of a symlink", true, stat != null)) {
+            expect("busybox stat path", "/system/bin/sh", stat.getPath());
+            expect("busybox stat target", "/system/bin/mksh", stat.getSymlinkTarget());
+            expect("busybox stat context", "u:object_r:system_file:s0", stat.getContext());
+            expect("busybox stat inode", 1234L, stat.getInode());
+            expect("busybox stat mtime", 1230768000000L, stat.getLastModified());
+            expect("busybox stat symlink", true, stat.isSymlink());
+        }
+
+        stat = parseStat(busybox, "81a4 0 0 12 1230768000 55 ? '/data/local/a b.txt'");
+        if (expect("busybox stat of a name with a space", true, stat != null)) {
+            expect("busybox stat path", "/data/local/a b.txt", stat.getPath());
+            expect("busybox stat without context", null, stat.getContext());
+            expect("busybox stat size", 12L, stat.getSize());
+        }
+
+        stat = parseStat(toybox, "a1ff 0 2000 4 1230768000 1234 /system/bin/sh -> mksh");
+        if (expect("toybox stat of a symlink", true, stat != null)) {
+            expect("toybox stat path", "/system/bin/sh", stat.getPath());
+            expect("toybox stat target", "mksh", stat.getSymlinkTarget());
+        }
+
+        stat = parseStat(toybox, "41ed 1000 1000 4096 1230768000 2 /data/local/my dir");
+        if (expect("toybox stat of a directory", true, stat != null)) {
+            expect("toybox stat path", "/data/local/my dir", stat.getPath());
+            expect("toybox stat directory", true, stat.isDirectory());
+            expect("toybox stat uid", 1000, stat.getUid());
+        }
+
+        expect("stat error line", null, parseStat(toybox, "stat: '/nope': No such file or directory"));
+    }
+
+    private Object statFormat(boolean withContext) {
+        try {
+            Constructor<?> constructor = Class.forName(INTERNAL + "StatFormat")
+                    .getDeclaredConstructor(String.class, boolean.class);
+            constructor.setAccessible(true);
+            return constructor.newInstance("stat", withContext);
+        } catch (Exception e) {
+            failures.add("StatFormat could not be created: " + e);
+            return null;
+        }
+    }
+
+    private FileStat parseStat(Object format, String line) {
+        try {
+            Method parse = format.getClass().getDeclaredMethod("parse", String.class);
+            parse.setAccessible(true);
+            return (FileStat) parse.invoke(format, line);
+        } catch (Exception e) {
+            failures.add("StatFormat.parse failed on " + line + ": " + e);
+            return null;
+        }
+    }
+
+    private void checkDf() {
+        checkDf("toolbox df", "/system: 516096K total, 457228K used, 58868K available (block size 4096)\n",
+                516096, 457228, 58868);
+
+        checkDf("toolbox df with sizes",
+                "Filesystem             Size   Used   Free   Blksize\n"
+                        + "/system                  1.5G   1.0G   512.0M   4096\n",
+                1572864, 1048576, 524288);
+
+        //busybox puts a long device name on a line of its own.
+        checkDf("busybox df",
+                "Filesystem           1K-blocks      Used Available Use% Mounted on\n"
+                        + "/dev/block/platform/msm_sdcc.1/by-name/system\n"
+                        + "                       1548144   1292536    255608  83% /system\n",
+                1548144, 1292536, 255608);
+
+        expect("df error", null, parseDf("df: /system: Permission denied\n"));
+    }
+
+    private void checkDf(String what, String df, long totalKb, long usedKb, long freeKb) {
+        Space space = parseDf(df);
+        if (expect(what, true, space != null)) {
+            expect(what + " total", totalKb * 1024, space.getTotal());
+            expect(what + " used", usedKb * 1024, space.getUsed());
+            expect(what + " free", freeKb * 1024, space.getFree());
+        }
+    }
+
+    private Space parseDf(String df) {
+        return (Space) call("SpaceService", "parseDf", new Class<?>[]{String.class, String.class, long.class},
+                "/system", df, 0L);
+    }
+
+    private void checkFileEvent() {
+        FileEvent event = parseEvent("n\t/data/local\tmy file");
+        if (expect("inotifyd event in a directory", true, event != null)) {
+            expect("inotifyd events", "n", event.getEvents());
+            expect("inotifyd name", "my file", event.getName());
+            expect("inotifyd file", "/data/local/my file", event.getFile());
+        }
+
+        event = parseEvent("D\t/data/local/file");
+        if (expect("inotifyd event on a watched file", true, event != null)) {
+            expect("inotifyd name", null, event.getName());
+            expect("inotifyd file", "/data/local/file", event.getFile());
+        }
+
+        expect("inotifyd error line", null, parseEvent("inotifyd: /nope: No such file"));
+    }
+
+    private FileEvent parseEvent(String line) {
+        return (FileEvent) call("InotifyWatcher", "parse", new Class<?>[]{String.class}, line);
+    }
+
+    /**
+     * Calls a static method of an internal class, a failure to call it counts as a failed sample.
+     */
+    private Object call(String className, String method, Class<?>[] types, Object... args) {
+        try {
+            Method m = Class.forName(INTERNAL + className).getDeclaredMethod(method, types);
+            m.setAccessible(true);
+            return m.invoke(null, args);
+        } catch (InvocationTargetException e) {
+            failures.add(className + "." + method + " threw " + e.getCause());
+        } catch (Exception e) {
+            failures.add(className + "." + method + " could not be called: " + e);
+        }
+        return null;
+    }
+
+    /**
+     * @return true if actual is what was expected, otherwise the difference is added to the failures.
+     */
+    private boolean expect(String what, Object expected, Object actual) {
+        if (expected == null ? actual == null : expected.equals(actual)) {
+            return true;
+        }
+
+        failures.add(what + ": expected " + expected + ", got " + actual);
+        return false;
+    }
+}
@@ -22,7 +22,13 @@
 
 package com.stericson.RootToolsTests;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import android.app.Activity;
@@ -38,11 +44,16 @@ import android.widget.ScrollView;
 import android.widget.TextView;
 
 import com.stericson.RootTools.RootTools;
+import com.stericson.RootTools.containers.DirEntry;
+import com.stericson.RootTools.containers.FileStat;
+import com.stericson.RootTools.containers.FindFilter;
 import com.stericson.RootTools.containers.Permissions;
+import com.stericson.RootTools.containers.Space;
 import com.stericson.RootTools.exceptions.RootDeniedException;
 import com.stericson.RootTools.execution.CommandCapture;
 import com.stericson.RootTools.execution.JavaCommandCapture;
 import com.stericson.RootTools.execution.Shell;
+import com.stericson.RootTools.execution.StreamCallback;
 
 public class SanityCheckRootTools extends Activity {
     private ScrollView mScrollView;
@@ -259,6 +270,84 @@ public class SanityCheckRootTools extends Activity {
                 e.printStackTrace();
             }
 
+            visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing parsers");
+            visualUpdate(TestHandler.ACTION_DISPLAY, "[ Parsing samples of shell output ]\n");
+            List<String> failures = ParserChecks.run();
+            for (String failure : failures) {
+                visualUpdate(TestHandler.ACTION_DISPLAY, "FAILED " + failure + "\n");
+            }
+            visualUpdate(TestHandler.ACTION_DISPLAY, failures.isEmpty() + " k\n\n");
+
+            visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing stat");
+            visualUpdate(TestHandler.ACTION_DISPLAY, "[ Checking stat of sh, busybox and build.prop ]\n");
+            Map<String, FileStat> stats = RootTools.stat(Arrays.asList("/system/bin/sh", "/system/xbin/busybox",
+                    "/system/build.prop"));
+            for (FileStat stat : stats.values()) {
+                visualUpdate(TestHandler.ACTION_DISPLAY, stat + " k\n");
+            }
+            visualUpdate(TestHandler.ACTION_DISPLAY, stats.size() + " k\n\n");
+
+            try {
+                visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing list");
+                visualUpdate(TestHandler.ACTION_DISPLAY, "[ Listing /system ]\n");
+                int listed = RootTools.list("/system", new StreamCallback<DirEntry>() {
+                    public boolean onResult(DirEntry entry) {
+                        visualUpdate(TestHandler.ACTION_DISPLAY, entry.getName() + "\n");
+                        return true;
+                    }
+                });
+                visualUpdate(TestHandler.ACTION_DISPLAY, listed + " k\n\n");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing getSpace of several partitions");
+            visualUpdate(TestHandler.ACTION_DISPLAY, "[ Checking /system, /data and /cache in one go ]\n");
+            for (Space space : RootTools.getSpace(Arrays.asList("/system", "/data", "/cache")).values()) {
+                visualUpdate(TestHandler.ACTION_DISPLAY, space + " k\n");
+            }
+            visualUpdate(TestHandler.ACTION_DISPLAY, "\n");
+
+            visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing openRead");
+            visualUpdate(TestHandler.ACTION_DISPLAY, "[ Reading build.prop as root ]\n");
+            byte[] buildProp = readAll("/system/build.prop");
+            visualUpdate(TestHandler.ACTION_DISPLAY, (buildProp != null ? buildProp.length : -1) + " k\n\n");
+
+            visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing openWrite");
+            visualUpdate(TestHandler.ACTION_DISPLAY, "[ Writing a file as root and reading it back ]\n");
+            visualUpdate(TestHandler.ACTION_DISPLAY, writeAndReadBack("/data/local/tmp/roottools_sanity") + " k\n\n");
+
+            try {
+                visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing checksum");
+                visualUpdate(TestHandler.ACTION_DISPLAY, "[ Hashing build.prop and sh ]\n");
+                Map<String, byte[]> sums = RootTools.checksum(Arrays.asList("/system/build.prop", "/system/bin/sh"), "MD5");
+                for (Map.Entry<String, byte[]> sum : sums.entrySet()) {
+                    visualUpdate(TestHandler.ACTION_DISPLAY, sum.getKey() + " " + hex(sum.getValue()) + " k\n");
+                }
+                visualUpdate(TestHandler.ACTION_DISPLAY, "\n");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            try {
+                visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing find");
+                visualUpdate(TestHandler.ACTION_DISPLAY, "[ Finding 5 libraries below /system ]\n");
+                int found = RootTools.find("/system", new FindFilter().setName("*.so").setType(FindFilter.FILE), 5,
+                        new StreamCallback<DirEntry>() {
+                            public boolean onResult(DirEntry entry) {
+                                visualUpdate(TestHandler.ACTION_DISPLAY, entry.getPath() + "\n");
+                                return true;
+                            }
+                        });
+                visualUpdate(TestHandler.ACTION_DISPLAY, found + " k\n\n");
+
+                visualUpdate(TestHandler.ACTION_DISPLAY, "[ Finding build.prop ]\n");
+                visualUpdate(TestHandler.ACTION_DISPLAY,
+                        RootTools.findFirst("/system", new FindFilter().setName("build.prop").setMaxDepth(1)) + " k\n\n");
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
             visualUpdate(TestHandler.ACTION_PDISPLAY, "Testing df");
             long spaceValue = RootTools.getSpace("/data");
             visualUpdate(TestHandler.ACTION_DISPLAY, "[ Checking /data partition size]\n");
@@ -325,6 +414,56 @@ public class SanityCheckRootTools extends Activity {
 
         }
 
+        private byte[] readAll(String path) {
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+
+            try {
+                InputStream in = RootTools.openRead(SanityCheckRootTools.this, path);
+                try {
+                    byte[] buffer = new byte[1024];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        read.write(buffer, 0, count);
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+
+            return read.toByteArray();
+        }
+
+        private boolean writeAndReadBack(String path) {
+            byte[] written = "RootTools sanity check\n".getBytes();
+
+            try {
+                OutputStream out = RootTools.openWrite(SanityCheckRootTools.this, path, "600", null, false);
+                try {
+                    out.write(written);
+                } finally {
+                    out.close();
+                }
+
+                return Arrays.equals(written, readAll(path));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            } finally {
+                RootTools.deleteFileOrDirectory(path, false);
+            }
+        }
+
+        private String hex(byte[] bytes) {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bytes) {
+                sb.append(String.format("%02x", b & 0xff));
+            }
+            return sb.toString();
+        }
+
         private void visualUpdate(int action, String text) {
             Message msg = mHandler.obtainMessage();
             Bundle bundle = new Bundle();